@@ -0,0 +1,4 @@
+package com.example.deviceownerapp.jmh_generated;
+public class ManifestBenchmark_Manifest_jmhType extends ManifestBenchmark_Manifest_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.example.deviceownerapp.jmh_generated;
+public class ManifestBenchmark_jmhType extends ManifestBenchmark_jmhType_B3 {
+}
+
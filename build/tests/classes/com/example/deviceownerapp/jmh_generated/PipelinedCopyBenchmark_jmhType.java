@@ -0,0 +1,4 @@
+package com.example.deviceownerapp.jmh_generated;
+public class PipelinedCopyBenchmark_jmhType extends PipelinedCopyBenchmark_jmhType_B3 {
+}
+
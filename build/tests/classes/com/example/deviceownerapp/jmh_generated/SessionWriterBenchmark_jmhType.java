@@ -0,0 +1,4 @@
+package com.example.deviceownerapp.jmh_generated;
+public class SessionWriterBenchmark_jmhType extends SessionWriterBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.example.deviceownerapp.jmh_generated;
+public class ZipArchiveBenchmark_Archive_jmhType extends ZipArchiveBenchmark_Archive_jmhType_B3 {
+}
+
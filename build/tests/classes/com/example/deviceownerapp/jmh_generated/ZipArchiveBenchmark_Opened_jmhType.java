@@ -0,0 +1,4 @@
+package com.example.deviceownerapp.jmh_generated;
+public class ZipArchiveBenchmark_Opened_jmhType extends ZipArchiveBenchmark_Opened_jmhType_B3 {
+}
+
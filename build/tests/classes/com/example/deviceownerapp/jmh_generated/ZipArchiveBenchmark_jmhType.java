@@ -0,0 +1,4 @@
+package com.example.deviceownerapp.jmh_generated;
+public class ZipArchiveBenchmark_jmhType extends ZipArchiveBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,285 @@
+package com.example.deviceownerapp;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
+import android.content.pm.SigningInfo;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Signer certificates from the APK Signing Block (schemes v2, v3 and v3.1).
+ *
+ * The block sits between the last entry and the central directory, so
+ * only a few KB before getCentralDirectoryOffset() are read. Certificates
+ * are compared as SHA-256 digests of their DER encoding; signatures are
+ * not verified here, the installer does that.
+ *
+ * checkUpdate() rejects an APK before it is written to a session when none
+ * of its signers (or the keys it rotated from) signed the installed app:
+ * an install the system would refuse with STATUS_FAILURE_CONFLICT after
+ * copying every byte. Anything less certain - no signing block, a DEFLATED
+ * inner APK, an app that isn't installed - is left to the installer.
+ */
+public class ApkSigningBlock {
+
+    private static final String TAG = "ApkSigningBlock";
+
+    private static final long MAGIC_LO = 0x20676953204b5041L; // "APK Sig "
+    private static final long MAGIC_HI = 0x3234206b636f6c42L; // "Block 42"
+    private static final int FOOTER_SIZE = 24;
+    /** Real blocks are a few KB padded to 4 KB; anything near this is not one. */
+    private static final int MAX_SIZE = 16 * 1024 * 1024;
+
+    private static final int V2_BLOCK_ID = 0x7109871a;
+    private static final int V3_BLOCK_ID = 0xf05368c0;
+    private static final int V31_BLOCK_ID = 0x1b93ad61;
+    private static final int PROOF_OF_ROTATION_ATTR_ID = 0x3ba06f8c;
+
+    private static final String MANIFEST = "AndroidManifest.xml";
+
+    /** SHA-256 of each signer certificate, hex. */
+    public final Set<String> signers;
+    /** SHA-256 of certificates in the v3 rotation lineage, hex. */
+    public final Set<String> lineage;
+
+    private ApkSigningBlock(Set<String> signers, Set<String> lineage) {
+        this.signers = Collections.unmodifiableSet(signers);
+        this.lineage = Collections.unmodifiableSet(lineage);
+    }
+
+    /**
+     * The signing block of apk, or null if it has none (v1-only signed).
+     */
+    public static ApkSigningBlock read(ZipArchive apk) throws IOException {
+        long cdOffset = apk.getCentralDirectoryOffset();
+        if (cdOffset < FOOTER_SIZE) {
+            return null;
+        }
+        ByteBuffer footer = ZipArchive.read(apk.getChannel(), cdOffset - FOOTER_SIZE, FOOTER_SIZE);
+        if (footer.getLong(8) != MAGIC_LO || footer.getLong(16) != MAGIC_HI) {
+            return null;
+        }
+        // The size excludes the leading size field itself
+        long size = footer.getLong(0);
+        if (size < FOOTER_SIZE || size > MAX_SIZE || cdOffset - size - 8 < 0) {
+            throw new IOException("Corrupt APK Signing Block");
+        }
+        ByteBuffer block = ZipArchive.read(apk.getChannel(), cdOffset - size - 8, (int) size + 8);
+        if (block.getLong(0) != size) {
+            throw new IOException("Corrupt APK Signing Block");
+        }
+
+        Set<String> signers = new HashSet<>();
+        Set<String> lineage = new HashSet<>();
+        try {
+            // ID-value pairs, each with a 64-bit length, up to the footer
+            block.position(8);
+            block.limit((int) size + 8 - FOOTER_SIZE);
+            while (block.hasRemaining()) {
+                long length = block.getLong();
+                if (length < 4 || length > block.remaining()) {
+                    throw new IOException("Corrupt APK Signing Block");
+                }
+                int next = block.position() + (int) length;
+                int id = block.getInt();
+                ByteBuffer value = slice(block, next - block.position());
+                if (id == V2_BLOCK_ID) {
+                    readSigners(value, false, signers, lineage);
+                } else if (id == V3_BLOCK_ID || id == V31_BLOCK_ID) {
+                    readSigners(value, true, signers, lineage);
+                }
+                block.position(next);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt APK Signing Block", e);
+        }
+        if (signers.isEmpty()) {
+            return null; // Only blocks we don't know, such as padding or source stamps
+        }
+        return new ApkSigningBlock(signers, lineage);
+    }
+
+    /**
+     * Throw if the installed packageName was signed by none of block's
+     * signers or lineage. Does nothing if it isn't installed or its
+     * signatures can't be read.
+     */
+    public static void checkUpdate(Context context, String packageName, ApkSigningBlock block) throws IOException {
+        if (block == null) {
+            return;
+        }
+        Set<String> installed = getInstalledSigners(context, packageName);
+        if (installed != null && !block.sharesSignerWith(installed)) {
+            throw new IOException("Signature mismatch: " + packageName
+                    + " is installed with a different signing key. Uninstall it first.");
+        }
+    }
+
+    private boolean sharesSignerWith(Set<String> installed) {
+        return !Collections.disjoint(installed, signers) || !Collections.disjoint(installed, lineage);
+    }
+
+    /**
+     * checkUpdate() for a single APK read in place. Returns its package name.
+     */
+    public static String checkApk(Context context, ZipArchive apk) throws IOException {
+        Span span = Span.begin("install.checkSigner");
+        try {
+            ZipArchive.Entry manifest = apk.getEntry(MANIFEST);
+            if (manifest == null) {
+                throw new IOException("No " + MANIFEST);
+            }
+            String packageName;
+            try (InputStream in = apk.getInputStream(manifest)) {
+                packageName = BinaryManifest.read(in).packageName;
+            }
+            checkUpdate(context, packageName, read(apk));
+            return packageName;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * checkUpdate() for every STORED split of bundle. DEFLATED splits would
+     * have to be inflated to reach their block, so they are skipped.
+     */
+    public static void checkBundle(Context context, ZipArchive zip, SplitBundle bundle) throws IOException {
+        Span span = Span.begin("install.checkSigner");
+        try {
+            Set<String> installed = getInstalledSigners(context, bundle.packageName);
+            if (installed == null) {
+                return;
+            }
+            for (SplitBundle.Split split : bundle.splits) {
+                if (!split.entry.isStored()) {
+                    continue;
+                }
+                ZipArchive apk = ZipArchive.open(zip.getChannel(), zip.getDataOffset(split.entry), split.entry.size);
+                ApkSigningBlock block = read(apk);
+                if (block != null && !block.sharesSignerWith(installed)) {
+                    throw new IOException("Signature mismatch: " + split.entry.name + " is not signed like the installed "
+                            + bundle.packageName + ". Uninstall it first.");
+                }
+            }
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * SHA-256 of the installed package's current and past signer
+     * certificates, or null if it isn't installed.
+     */
+    private static Set<String> getInstalledSigners(Context context, String packageName) {
+        PackageManager pm = context.getPackageManager();
+        Signature[] signatures;
+        try {
+            if (Build.VERSION.SDK_INT >= 28) {
+                PackageInfo info = pm.getPackageInfo(packageName, PackageManager.GET_SIGNING_CERTIFICATES);
+                SigningInfo signingInfo = info.signingInfo;
+                if (signingInfo == null) {
+                    return null;
+                }
+                signatures = signingInfo.hasMultipleSigners()
+                        ? signingInfo.getApkContentsSigners() : signingInfo.getSigningCertificateHistory();
+            } else {
+                signatures = pm.getPackageInfo(packageName, PackageManager.GET_SIGNATURES).signatures;
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            return null; // Fresh install, or hidden from us by package visibility
+        }
+        if (signatures == null || signatures.length == 0) {
+            return null;
+        }
+        Set<String> digests = new HashSet<>();
+        for (Signature signature : signatures) {
+            digests.add(sha256(signature.toByteArray()));
+        }
+        Log.d(TAG, packageName + " is installed with " + digests.size() + " signer certificate(s)");
+        return digests;
+    }
+
+    // ======== Block parsing ========
+
+    /**
+     * A v2 or v3 scheme block: length-prefixed signers, each starting with
+     * length-prefixed signed data that holds the certificates.
+     */
+    private static void readSigners(ByteBuffer value, boolean v3, Set<String> signers, Set<String> lineage)
+            throws IOException {
+        ByteBuffer signerList = lengthPrefixed(value);
+        while (signerList.hasRemaining()) {
+            ByteBuffer signer = lengthPrefixed(signerList);
+            ByteBuffer signedData = lengthPrefixed(signer);
+            lengthPrefixed(signedData); // digests
+            ByteBuffer certificates = lengthPrefixed(signedData);
+            while (certificates.hasRemaining()) {
+                signers.add(sha256(lengthPrefixed(certificates)));
+            }
+            if (v3) {
+                signedData.getInt(); // minSdkVersion
+                signedData.getInt(); // maxSdkVersion
+                readLineage(lengthPrefixed(signedData), lineage);
+            }
+        }
+    }
+
+    /**
+     * Certificates of the proof-of-rotation attribute, the keys a v3
+     * signer rotated from. Each node's signed data starts with its
+     * length-prefixed certificate.
+     */
+    private static void readLineage(ByteBuffer attributes, Set<String> lineage) throws IOException {
+        while (attributes.hasRemaining()) {
+            ByteBuffer attribute = lengthPrefixed(attributes);
+            if (attribute.getInt() != PROOF_OF_ROTATION_ATTR_ID) {
+                continue;
+            }
+            attribute.getInt(); // version
+            while (attribute.hasRemaining()) {
+                ByteBuffer node = lengthPrefixed(attribute);
+                ByteBuffer signedData = lengthPrefixed(node);
+                lineage.add(sha256(lengthPrefixed(signedData)));
+            }
+        }
+    }
+
+    private static ByteBuffer lengthPrefixed(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt APK Signing Block");
+        }
+        ByteBuffer slice = slice(buffer, length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        return slice.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String sha256(ByteBuffer data) {
+        MessageDigest digest = InstallDigests.newDigest();
+        digest.update(data);
+        return InstallDigests.toHex(digest.digest());
+    }
+
+    private static String sha256(byte[] data) {
+        return InstallDigests.toHex(InstallDigests.newDigest().digest(data));
+    }
+}
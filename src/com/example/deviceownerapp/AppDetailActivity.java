@@ -7,16 +7,20 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.PermissionInfo;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 import android.widget.CompoundButton;
 import android.widget.LinearLayout;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 public class AppDetailActivity extends Activity {
 
     private static final String TAG = "AppDetailActivity";
@@ -65,15 +69,23 @@ public class AppDetailActivity extends Activity {
     }
 
     private void setupHideSwitch() {
-        DpmHelper.Mode mode = DpmHelper.getActiveMode(this);
-        if (mode == DpmHelper.Mode.NONE) {
-            hideSwitch.setEnabled(false);
-        } else {
-            boolean isHidden = DpmHelper.isApplicationHidden(this, packageName);
-            isProgrammaticChange = true;
-            hideSwitch.setChecked(isHidden);
-            isProgrammaticChange = false;
-        }
+        // Disabled until the mode and hidden state come back from the binder thread
+        hideSwitch.setEnabled(false);
+        DpmAsync.getActiveMode(this).thenAccept(new Consumer<DpmHelper.Mode>() {
+            @Override
+            public void accept(DpmHelper.Mode mode) {
+                if (mode == DpmHelper.Mode.NONE) return;
+                DpmAsync.isApplicationHidden(AppDetailActivity.this, packageName).thenAccept(new Consumer<Boolean>() {
+                    @Override
+                    public void accept(Boolean isHidden) {
+                        isProgrammaticChange = true;
+                        hideSwitch.setChecked(isHidden);
+                        isProgrammaticChange = false;
+                        hideSwitch.setEnabled(true);
+                    }
+                });
+            }
+        });
 
         hideSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
             @Override
@@ -108,81 +120,121 @@ public class AppDetailActivity extends Activity {
         });
     }
 
-    private void setAppHidden(boolean hidden, CompoundButton buttonView) {
-        boolean success = DpmHelper.setApplicationHidden(this, packageName, hidden);
-        if (success) {
-            String status = hidden ? "hidden" : "unhidden";
-            Toast.makeText(AppDetailActivity.this, "App " + status, Toast.LENGTH_SHORT).show();
-        } else {
-            Logger.log(AppDetailActivity.this, TAG, "Failed to change hidden state");
-            isProgrammaticChange = true;
-            buttonView.setChecked(!hidden);
-            isProgrammaticChange = false;
-        }
+    private void setAppHidden(final boolean hidden, final CompoundButton buttonView) {
+        buttonView.setEnabled(false);
+        DpmAsync.setApplicationHidden(this, packageName, hidden).thenAccept(new Consumer<Boolean>() {
+            @Override
+            public void accept(Boolean success) {
+                buttonView.setEnabled(true);
+                if (success) {
+                    String status = hidden ? "hidden" : "unhidden";
+                    Toast.makeText(AppDetailActivity.this, "App " + status, Toast.LENGTH_SHORT).show();
+                } else {
+                    Logger.log(AppDetailActivity.this, TAG, "Failed to change hidden state");
+                    isProgrammaticChange = true;
+                    buttonView.setChecked(!hidden);
+                    isProgrammaticChange = false;
+                }
+            }
+        });
     }
 
     private void loadPermissions() {
-        try {
-            PackageInfo pkgInfo = pm.getPackageInfo(packageName, PackageManager.GET_PERMISSIONS);
-            String[] permissions = pkgInfo.requestedPermissions;
+        new LoadPermissionsTask().execute();
+    }
 
-            if (permissions == null || permissions.length == 0) {
-                TextView noPerms = new TextView(this);
-                noPerms.setText("No permissions requested.");
-                permissionContainer.addView(noPerms);
-                return;
+    /**
+     * Loads all grant states in one background pass and adds each switch as
+     * soon as its state is known, so the screen opens at once even for apps
+     * with dozens of permissions.
+     */
+    private class LoadPermissionsTask extends AsyncTask<Void, PermissionSnapshot.Entry, Integer> {
+        private DpmHelper.Mode mode;
+        private long startTime;
+
+        @Override
+        protected Integer doInBackground(Void... voids) {
+            startTime = SystemClock.elapsedRealtime();
+            try {
+                mode = DpmHelper.getActiveMode(AppDetailActivity.this);
+                List<PermissionSnapshot.Entry> entries = PermissionSnapshot.load(AppDetailActivity.this,
+                        packageName, new PermissionSnapshot.Listener() {
+                            @Override
+                            public void onEntry(PermissionSnapshot.Entry entry) {
+                                publishProgress(entry);
+                            }
+                        });
+                return entries.size();
+            } catch (Exception e) {
+                Logger.log(AppDetailActivity.this, TAG, "Could not load permissions: " + e.getMessage());
+                return -1;
             }
+        }
 
-            for (final String permission : permissions) {
-                boolean isRuntime = false;
-                try {
-                    PermissionInfo pInfo = pm.getPermissionInfo(permission, 0);
-                    if (pInfo.protectionLevel == PermissionInfo.PROTECTION_DANGEROUS) {
-                        isRuntime = true;
-                    }
-                } catch (PackageManager.NameNotFoundException e) {
-                }
-
-                Switch permSwitch = new Switch(this);
-                final String shortName = permission.substring(permission.lastIndexOf(".") + 1);
-                permSwitch.setText(shortName);
-                permSwitch.setMinHeight(120);
+        @Override
+        protected void onProgressUpdate(PermissionSnapshot.Entry... entries) {
+            for (PermissionSnapshot.Entry entry : entries) {
+                addPermissionSwitch(entry, mode);
+            }
+        }
 
-                if (isRuntime) {
-                    DpmHelper.Mode mode = DpmHelper.getActiveMode(this);
-                    if (mode == DpmHelper.Mode.NONE) {
-                        permSwitch.setEnabled(false);
-                    } else {
-                        int grantState = DpmHelper.getPermissionGrantState(this, packageName, permission);
-                        permSwitch.setChecked(grantState == DevicePolicyManager.PERMISSION_GRANT_STATE_GRANTED);
+        @Override
+        protected void onPostExecute(Integer count) {
+            if (count == 0) {
+                TextView noPerms = new TextView(AppDetailActivity.this);
+                noPerms.setText("No permissions requested.");
+                permissionContainer.addView(noPerms);
+            }
+            Log.d(TAG, "Loaded " + count + " permissions for " + packageName + " in "
+                    + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        }
+    }
 
-                        permSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-                            @Override
-                            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-                                int newState = isChecked ?
-                                        DevicePolicyManager.PERMISSION_GRANT_STATE_GRANTED :
-                                        DevicePolicyManager.PERMISSION_GRANT_STATE_DENIED;
-
-                                boolean success = DpmHelper.setPermissionGrantState(
-                                        AppDetailActivity.this, packageName, permission, newState);
-                                if (success) {
-                                    String status = isChecked ? "Granted" : "Denied";
-                                    Toast.makeText(AppDetailActivity.this, shortName + " " + status, Toast.LENGTH_SHORT).show();
-                                } else {
-                                    buttonView.setChecked(!isChecked);
-                                }
-                            }
-                        });
+    private void addPermissionSwitch(PermissionSnapshot.Entry entry, DpmHelper.Mode mode) {
+        final String permission = entry.permission;
+        Switch permSwitch = new Switch(this);
+        final String shortName = permission.substring(permission.lastIndexOf(".") + 1);
+        permSwitch.setText(shortName);
+        permSwitch.setMinHeight(120);
+
+        if (entry.isRuntime) {
+            if (mode == DpmHelper.Mode.NONE) {
+                permSwitch.setEnabled(false);
+            } else {
+                permSwitch.setChecked(entry.grantState == DevicePolicyManager.PERMISSION_GRANT_STATE_GRANTED);
+
+                permSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+                    @Override
+                    public void onCheckedChanged(final CompoundButton buttonView, final boolean isChecked) {
+                        if (isProgrammaticChange) return;
+
+                        int newState = isChecked ?
+                                DevicePolicyManager.PERMISSION_GRANT_STATE_GRANTED :
+                                DevicePolicyManager.PERMISSION_GRANT_STATE_DENIED;
+
+                        buttonView.setEnabled(false);
+                        DpmAsync.setPermissionGrantState(AppDetailActivity.this, packageName, permission, newState)
+                                .thenAccept(new Consumer<Boolean>() {
+                                    @Override
+                                    public void accept(Boolean success) {
+                                        if (success) {
+                                            String status = isChecked ? "Granted" : "Denied";
+                                            Toast.makeText(AppDetailActivity.this, shortName + " " + status, Toast.LENGTH_SHORT).show();
+                                        } else {
+                                            isProgrammaticChange = true;
+                                            buttonView.setChecked(!isChecked);
+                                            isProgrammaticChange = false;
+                                        }
+                                        buttonView.setEnabled(true);
+                                    }
+                                });
                     }
-                } else {
-                    permSwitch.setChecked(true);
-                    permSwitch.setEnabled(false);
-                }
-                permissionContainer.addView(permSwitch);
+                });
             }
-
-        } catch (Exception e) {
-            Logger.log(this, TAG, "Could not load permissions: " + e.getMessage());
+        } else {
+            permSwitch.setChecked(true);
+            permSwitch.setEnabled(false);
         }
+        permissionContainer.addView(permSwitch);
     }
 }
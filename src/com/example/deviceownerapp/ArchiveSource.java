@@ -0,0 +1,160 @@
+package com.example.deviceownerapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * A seekable view of the archive behind a content URI.
+ *
+ * If the provider hands out a descriptor for a regular file, the archive
+ * is read in place through that descriptor's FileChannel. Only pipes,
+ * sockets and other non-seekable descriptors are staged into a temp file
+ * in the cache dir first, unless the caller uses openSeekable() and
+ * streams them instead.
+ */
+public class ArchiveSource implements Closeable {
+
+    private static final String TAG = "ArchiveSource";
+
+    private final FileInputStream stream;
+    private final File stagedFile;
+    private final String identity;
+
+    private ArchiveSource(FileInputStream stream, File stagedFile, String identity) {
+        this.stream = stream;
+        this.stagedFile = stagedFile;
+        this.identity = identity;
+    }
+
+    public static ArchiveSource open(Context context, Uri uri) throws IOException {
+        ArchiveSource source = openSeekable(context, uri);
+        return source != null ? source : stage(context, uri);
+    }
+
+    /**
+     * Like open(), but returns null instead of staging when the descriptor
+     * can't be seeked, so the caller can stream it with ZipStreamWriter.
+     */
+    public static ArchiveSource openSeekable(Context context, Uri uri) throws IOException {
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd == null) {
+            throw new IOException("Could not open " + uri);
+        }
+        ArchiveSource source = inPlace(uri, pfd);
+        if (source == null) {
+            pfd.close();
+        }
+        return source;
+    }
+
+    /**
+     * Read pfd in place if it is a regular file. Returns null and leaves
+     * pfd open otherwise, so a pipe can still be streamed from it.
+     */
+    public static ArchiveSource inPlace(Uri uri, ParcelFileDescriptor pfd) {
+        if (!isRegularFile(pfd)) {
+            return null;
+        }
+        Log.d(TAG, "Reading archive in place (" + pfd.getStatSize() + " bytes)");
+        return new ArchiveSource(new ParcelFileDescriptor.AutoCloseInputStream(pfd), null, identify(uri, pfd));
+    }
+
+    /**
+     * Whether the descriptor is a regular file, which FileChannel can seek.
+     */
+    static boolean isRegularFile(ParcelFileDescriptor pfd) {
+        try {
+            return OsConstants.S_ISREG(Os.fstat(pfd.getFileDescriptor()).st_mode);
+        } catch (Exception e) {
+            Log.d(TAG, "fstat failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * uri|dev|ino|size|mtime of a regular file descriptor, for InstallDigests.
+     * Null if the descriptor can't be stat'ed, isn't a regular file, or
+     * reports no mtime or inode: without both, a different file could
+     * come back under the same identity and be given stale digests.
+     */
+    static String identify(Uri uri, ParcelFileDescriptor pfd) {
+        try {
+            StructStat stat = Os.fstat(pfd.getFileDescriptor());
+            if (!OsConstants.S_ISREG(stat.st_mode) || stat.st_mtime <= 0 || stat.st_ino == 0) {
+                return null;
+            }
+            return uri + "|" + stat.st_dev + "|" + stat.st_ino + "|" + stat.st_size + "|" + stat.st_mtime;
+        } catch (Exception e) {
+            Log.d(TAG, "fstat failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static ArchiveSource stage(Context context, Uri uri) throws IOException {
+        Span span = Span.begin("archive.stage");
+        File tempFile = File.createTempFile("install", ".xapk", context.getCacheDir());
+        try {
+            try (InputStream in = context.getContentResolver().openInputStream(uri);
+                 FileOutputStream out = new FileOutputStream(tempFile)) {
+                if (in == null) {
+                    throw new IOException("Could not open " + uri);
+                }
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            Log.d(TAG, "Staged non-seekable archive (" + tempFile.length() + " bytes)");
+            return new ArchiveSource(new FileInputStream(tempFile), tempFile, null);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    public FileChannel getChannel() {
+        return stream.getChannel();
+    }
+
+    /**
+     * Identity of the file read in place (see identify()), or null when
+     * the archive was staged from a stream or has no reliable identity.
+     */
+    public String getIdentity() {
+        return identity;
+    }
+
+    /**
+     * True if the archive had to be copied to a temp file.
+     */
+    public boolean isStaged() {
+        return stagedFile != null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+        if (stagedFile != null) {
+            stagedFile.delete();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.deviceownerapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The split-related fields of a compiled (binary XML) AndroidManifest.xml.
+ *
+ * Only the string pool, the resource map and the start tags of <manifest>
+ * and its <uses-split> children are decoded; everything else is skipped
+ * chunk by chunk. Uses nothing but java.io and java.nio, so it runs the
+ * same on a plain JVM.
+ */
+public class BinaryManifest {
+
+    // Chunk types from ResourceTypes.h
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_XML_TYPE = 0x0003;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int RES_XML_END_ELEMENT_TYPE = 0x0103;
+    private static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+
+    private static final int UTF8_FLAG = 1 << 8;
+
+    // Res_value data types
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_INT_DEC = 0x10;
+    private static final int TYPE_INT_HEX = 0x11;
+    private static final int TYPE_INT_BOOLEAN = 0x12;
+
+    // android:* attribute resource ids
+    private static final int ATTR_NAME = 0x01010003;
+    private static final int ATTR_VERSION_CODE = 0x0101021b;
+    private static final int ATTR_IS_FEATURE_SPLIT = 0x0101055b;
+    private static final int ATTR_VERSION_CODE_MAJOR = 0x01010576;
+
+    /** Manifests are a few KB; anything near this is not one. */
+    static final int MAX_SIZE = 4 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+
+    public final String packageName;
+    public final long versionCode;
+    /** Null for the base APK. */
+    public final String splitName;
+    public final boolean isFeatureSplit;
+    /** The split this config split belongs to, or null for the base. */
+    public final String configForSplit;
+    /** Names from <uses-split>: feature splits this split depends on. */
+    public final List<String> usesSplits;
+
+    private BinaryManifest(String packageName, long versionCode, String splitName, boolean isFeatureSplit,
+                           String configForSplit, List<String> usesSplits) {
+        this.packageName = packageName;
+        this.versionCode = versionCode;
+        this.splitName = splitName;
+        this.isFeatureSplit = isFeatureSplit;
+        this.configForSplit = configForSplit;
+        this.usesSplits = Collections.unmodifiableList(usesSplits);
+    }
+
+    public boolean isBase() {
+        return splitName == null;
+    }
+
+    @Override
+    public String toString() {
+        return packageName + " v" + versionCode + (splitName != null ? " split " + splitName : " base");
+    }
+
+    /**
+     * Read and parse a binary manifest. in is read to the end, not closed.
+     */
+    public static BinaryManifest read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16384);
+        byte[] buffer = new byte[16384];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > MAX_SIZE) {
+                throw new IOException("AndroidManifest.xml too large");
+            }
+        }
+        return parse(out.toByteArray());
+    }
+
+    public static BinaryManifest parse(byte[] data) throws IOException {
+        try {
+            return parseChunks(data);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt manifest", e);
+        }
+    }
+
+    private static BinaryManifest parseChunks(byte[] data) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.length < 8 || (buf.getShort(0) & 0xFFFF) != RES_XML_TYPE) {
+            throw new IOException("Not a binary XML manifest");
+        }
+
+        String[] strings = new String[0];
+        int[] resourceIds = new int[0];
+
+        String packageName = null;
+        long versionCode = 0;
+        long versionCodeMajor = 0;
+        String splitName = null;
+        boolean isFeatureSplit = false;
+        String configForSplit = null;
+        List<String> usesSplits = new ArrayList<>();
+
+        int depth = 0;
+        int pos = buf.getShort(2) & 0xFFFF;
+        while (pos + 8 <= data.length) {
+            int type = buf.getShort(pos) & 0xFFFF;
+            int headerSize = buf.getShort(pos + 2) & 0xFFFF;
+            int size = buf.getInt(pos + 4);
+            if (size < 8 || pos + size > data.length || headerSize > size) {
+                throw new IOException("Corrupt chunk at " + pos);
+            }
+
+            switch (type) {
+                case RES_STRING_POOL_TYPE:
+                    strings = readStringPool(buf, pos, headerSize, size);
+                    break;
+                case RES_XML_RESOURCE_MAP_TYPE:
+                    resourceIds = new int[(size - headerSize) / 4];
+                    for (int i = 0; i < resourceIds.length; i++) {
+                        resourceIds[i] = buf.getInt(pos + headerSize + i * 4);
+                    }
+                    break;
+                case RES_XML_START_ELEMENT_TYPE: {
+                    depth++;
+                    int ext = pos + headerSize;
+                    String tag = string(strings, buf.getInt(ext + 4));
+                    int attrStart = buf.getShort(ext + 8) & 0xFFFF;
+                    int attrSize = buf.getShort(ext + 10) & 0xFFFF;
+                    int attrCount = buf.getShort(ext + 12) & 0xFFFF;
+                    boolean isManifest = depth == 1 && "manifest".equals(tag);
+                    boolean isUsesSplit = depth == 2 && "uses-split".equals(tag);
+                    if (!isManifest && !isUsesSplit) {
+                        break;
+                    }
+                    for (int i = 0; i < attrCount; i++) {
+                        int attr = ext + attrStart + i * attrSize;
+                        int nameIndex = buf.getInt(attr + 4);
+                        int resId = nameIndex >= 0 && nameIndex < resourceIds.length ? resourceIds[nameIndex] : 0;
+                        String name = string(strings, nameIndex);
+                        int rawValue = buf.getInt(attr + 8);
+                        int dataType = buf.get(attr + 15) & 0xFF;
+                        int value = buf.getInt(attr + 16);
+
+                        if (isUsesSplit) {
+                            if (resId == ATTR_NAME) {
+                                usesSplits.add(stringValue(strings, rawValue, dataType, value));
+                            }
+                        } else if (resId == ATTR_VERSION_CODE) {
+                            versionCode = value & 0xFFFFFFFFL;
+                        } else if (resId == ATTR_VERSION_CODE_MAJOR) {
+                            versionCodeMajor = value & 0xFFFFFFFFL;
+                        } else if (resId == ATTR_IS_FEATURE_SPLIT) {
+                            isFeatureSplit = dataType == TYPE_INT_BOOLEAN && value != 0;
+                        } else if (resId == 0 && "package".equals(name)) {
+                            packageName = stringValue(strings, rawValue, dataType, value);
+                        } else if (resId == 0 && "split".equals(name)) {
+                            splitName = stringValue(strings, rawValue, dataType, value);
+                        } else if (resId == 0 && "configForSplit".equals(name)) {
+                            configForSplit = stringValue(strings, rawValue, dataType, value);
+                        }
+                    }
+                    break;
+                }
+                case RES_XML_END_ELEMENT_TYPE:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+            pos += size;
+        }
+
+        if (packageName == null) {
+            throw new IOException("Manifest has no package name");
+        }
+        if (splitName != null && splitName.isEmpty()) {
+            splitName = null;
+        }
+        if (configForSplit != null && configForSplit.isEmpty()) {
+            configForSplit = null;
+        }
+        return new BinaryManifest(packageName, (versionCodeMajor << 32) | versionCode, splitName,
+                isFeatureSplit, configForSplit, usesSplits);
+    }
+
+    private static String stringValue(String[] strings, int rawValue, int dataType, int value) {
+        if (rawValue >= 0) {
+            return string(strings, rawValue);
+        }
+        if (dataType == TYPE_STRING) {
+            return string(strings, value);
+        }
+        if (dataType == TYPE_INT_DEC || dataType == TYPE_INT_HEX) {
+            return Integer.toString(value);
+        }
+        return null;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index >= 0 && index < strings.length ? strings[index] : null;
+    }
+
+    private static String[] readStringPool(ByteBuffer buf, int chunk, int headerSize, int size) throws IOException {
+        int count = buf.getInt(chunk + 8);
+        int flags = buf.getInt(chunk + 16);
+        int stringsStart = buf.getInt(chunk + 20);
+        if (count < 0 || headerSize + (long) count * 4 > size) {
+            throw new IOException("Corrupt string pool");
+        }
+        boolean utf8 = (flags & UTF8_FLAG) != 0;
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int offset = chunk + stringsStart + buf.getInt(chunk + headerSize + i * 4);
+            if (offset < chunk || offset >= chunk + size) {
+                throw new IOException("Corrupt string pool");
+            }
+            strings[i] = utf8 ? readUtf8(buf, offset) : readUtf16(buf, offset);
+        }
+        return strings;
+    }
+
+    private static String readUtf8(ByteBuffer buf, int offset) {
+        // UTF-16 length, then UTF-8 byte length, each 1 or 2 bytes
+        int pos = offset + ((buf.get(offset) & 0x80) != 0 ? 2 : 1);
+        int length = buf.get(pos) & 0xFF;
+        if ((length & 0x80) != 0) {
+            length = ((length & 0x7F) << 8) | (buf.get(pos + 1) & 0xFF);
+            pos += 2;
+        } else {
+            pos += 1;
+        }
+        return new String(buf.array(), pos, length, UTF_8);
+    }
+
+    private static String readUtf16(ByteBuffer buf, int offset) {
+        int length = buf.getShort(offset) & 0xFFFF;
+        int pos = offset + 2;
+        if ((length & 0x8000) != 0) {
+            length = ((length & 0x7FFF) << 16) | (buf.getShort(pos) & 0xFFFF);
+            pos += 2;
+        }
+        return new String(buf.array(), pos, length * 2, UTF_16LE);
+    }
+}
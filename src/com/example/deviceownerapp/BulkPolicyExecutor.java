@@ -0,0 +1,229 @@
+package com.example.deviceownerapp;
+
+import android.app.admin.DevicePolicyManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many hide/unhide and permission grant operations through DpmHelper on
+ * a bounded worker pool. Works in any mode DpmHelper supports. Progress and
+ * the final summary are delivered on the main thread.
+ */
+public class BulkPolicyExecutor {
+
+    private static final String TAG = "BulkPolicyExecutor";
+
+    public enum Operation {
+        HIDE,
+        UNHIDE,
+        GRANT_PERMISSION,
+        DENY_PERMISSION,
+        DEFAULT_PERMISSION
+    }
+
+    public static class Item {
+        public final String packageName;
+        public final Operation operation;
+        public final String permission; // Only for the *_PERMISSION operations
+
+        public Item(String packageName, Operation operation) {
+            this(packageName, operation, null);
+        }
+
+        public Item(String packageName, Operation operation, String permission) {
+            this.packageName = packageName;
+            this.operation = operation;
+            this.permission = permission;
+        }
+    }
+
+    public static class Result {
+        public final Item item;
+        public final boolean success;
+        public final boolean cancelled;
+        public final long latencyMs;
+
+        Result(Item item, boolean success, boolean cancelled, long latencyMs) {
+            this.item = item;
+            this.success = success;
+            this.cancelled = cancelled;
+            this.latencyMs = latencyMs;
+        }
+    }
+
+    public static class Summary {
+        public final int total;
+        public final int succeeded;
+        public final int failed;
+        public final int cancelled;
+        public final long wallMs;
+        public final long averageLatencyMs;
+        public final long maxLatencyMs;
+
+        Summary(int total, int succeeded, int failed, int cancelled, long wallMs,
+                long averageLatencyMs, long maxLatencyMs) {
+            this.total = total;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.wallMs = wallMs;
+            this.averageLatencyMs = averageLatencyMs;
+            this.maxLatencyMs = maxLatencyMs;
+        }
+
+        public double getItemsPerSecond() {
+            int done = succeeded + failed;
+            return wallMs > 0 ? done * 1000.0 / wallMs : done;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US,
+                    "%d ok, %d failed, %d cancelled in %d ms (%.1f/s, avg %d ms, max %d ms)",
+                    succeeded, failed, cancelled, wallMs, getItemsPerSecond(),
+                    averageLatencyMs, maxLatencyMs);
+        }
+    }
+
+    public interface Listener {
+        void onItemDone(Result result, int done, int total);
+        void onFinished(Summary summary);
+    }
+
+    private final Context context;
+    private final int threads;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private ExecutorService pool;
+
+    public BulkPolicyExecutor(Context context, int threads) {
+        this.context = context.getApplicationContext();
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Default pool size: a few concurrent binder calls, but never more than cores.
+     */
+    public static int defaultThreads() {
+        return Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Start running the items. An executor instance runs one batch.
+     */
+    public synchronized void start(final List<Item> items, final Listener listener) {
+        if (pool != null) {
+            throw new IllegalStateException("Batch already started");
+        }
+        pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, items.size())));
+
+        final int total = items.size();
+        final long start = SystemClock.elapsedRealtime();
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicLong latencySum = new AtomicLong();
+        final AtomicLong latencyMax = new AtomicLong();
+
+        if (total == 0) {
+            finish(listener, new Summary(0, 0, 0, 0, 0, 0, 0));
+            return;
+        }
+
+        for (final Item item : items) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Result result;
+                    if (cancelled.get()) {
+                        result = new Result(item, false, true, 0);
+                        skipped.incrementAndGet();
+                    } else {
+                        long itemStart = SystemClock.elapsedRealtime();
+                        boolean success = apply(item);
+                        long latency = SystemClock.elapsedRealtime() - itemStart;
+                        result = new Result(item, success, false, latency);
+                        (success ? succeeded : failed).incrementAndGet();
+                        latencySum.addAndGet(latency);
+                        long max;
+                        while (latency > (max = latencyMax.get())
+                                && !latencyMax.compareAndSet(max, latency)) {
+                            // retry
+                        }
+                    }
+
+                    final int doneCount = done.incrementAndGet();
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onItemDone(result, doneCount, total);
+                        }
+                    });
+
+                    if (doneCount == total) {
+                        int ran = succeeded.get() + failed.get();
+                        Summary summary = new Summary(total, succeeded.get(), failed.get(), skipped.get(),
+                                SystemClock.elapsedRealtime() - start,
+                                ran > 0 ? latencySum.get() / ran : 0, latencyMax.get());
+                        finish(listener, summary);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop starting new items. Items already in flight still complete.
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    private void finish(final Listener listener, final Summary summary) {
+        Log.d(TAG, "Bulk run finished: " + summary);
+        synchronized (this) {
+            pool.shutdown();
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFinished(summary);
+            }
+        });
+    }
+
+    private boolean apply(Item item) {
+        switch (item.operation) {
+            case HIDE:
+                return DpmHelper.setApplicationHidden(context, item.packageName, true);
+            case UNHIDE:
+                return DpmHelper.setApplicationHidden(context, item.packageName, false);
+            case GRANT_PERMISSION:
+                return DpmHelper.setPermissionGrantState(context, item.packageName, item.permission,
+                        DevicePolicyManager.PERMISSION_GRANT_STATE_GRANTED);
+            case DENY_PERMISSION:
+                return DpmHelper.setPermissionGrantState(context, item.packageName, item.permission,
+                        DevicePolicyManager.PERMISSION_GRANT_STATE_DENIED);
+            case DEFAULT_PERMISSION:
+                return DpmHelper.setPermissionGrantState(context, item.packageName, item.permission,
+                        DevicePolicyManager.PERMISSION_GRANT_STATE_DEFAULT);
+            default:
+                return false;
+        }
+    }
+}
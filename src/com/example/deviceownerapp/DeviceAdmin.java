@@ -18,6 +18,7 @@ public class DeviceAdmin extends DeviceAdminReceiver {
     @Override
     public void onEnabled(Context context, Intent intent) {
         super.onEnabled(context, intent);
+        ModeResolver.invalidate("Device Admin enabled");
         Toast.makeText(context, "Device Admin Enabled", Toast.LENGTH_SHORT).show();
         Log.d(TAG, "Device Admin Enabled");
     }
@@ -25,6 +26,7 @@ public class DeviceAdmin extends DeviceAdminReceiver {
     @Override
     public void onDisabled(Context context, Intent intent) {
         super.onDisabled(context, intent);
+        ModeResolver.invalidate("Device Admin disabled");
         Toast.makeText(context, "Device Admin Disabled", Toast.LENGTH_SHORT).show();
         Log.d(TAG, "Device Admin Disabled");
     }
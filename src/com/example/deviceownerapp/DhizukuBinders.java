@@ -0,0 +1,223 @@
+package com.example.deviceownerapp;
+
+import android.content.ComponentName;
+import android.os.IBinder;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+
+import com.rosan.dhizuku.api.Dhizuku;
+
+/**
+ * Long-lived Dhizuku-wrapped system service binders.
+ *
+ * Looking up a service through ServiceManager and wrapping it with
+ * Dhizuku.binderWrapper costs several reflective calls and IPCs, so the
+ * wrapped DevicePolicyManager, PackageManager and PackageInstaller binders
+ * (and Dhizuku's owner component) are built once and reused. They are
+ * dropped when one of the underlying system binders dies or when the
+ * Dhizuku state changes (see ModeResolver.invalidate), and rebuilt lazily
+ * on next use.
+ */
+public class DhizukuBinders {
+
+    private static final String TAG = "DhizukuBinders";
+
+    private static class PolicyHandles {
+        final IBinder rawDpm;
+        final IBinder dpm;
+        final ComponentName owner;
+
+        PolicyHandles(IBinder rawDpm, IBinder dpm, ComponentName owner) {
+            this.rawDpm = rawDpm;
+            this.dpm = dpm;
+            this.owner = owner;
+        }
+    }
+
+    private static class InstallerHandles {
+        final IBinder rawPm;
+        final IBinder rawInstaller;
+        final IBinder packageManager;
+        final IBinder installer;
+        final Object installerInterface;
+
+        InstallerHandles(IBinder rawPm, IBinder rawInstaller, IBinder packageManager,
+                         IBinder installer, Object installerInterface) {
+            this.rawPm = rawPm;
+            this.rawInstaller = rawInstaller;
+            this.packageManager = packageManager;
+            this.installer = installer;
+            this.installerInterface = installerInterface;
+        }
+    }
+
+    private static final Object lock = new Object();
+    private static volatile PolicyHandles policy = null;
+    private static volatile InstallerHandles installer = null;
+
+    // ======== DevicePolicyManager ========
+
+    /**
+     * The device_policy binder wrapped by Dhizuku.
+     */
+    public static IBinder getDevicePolicy() throws Exception {
+        return policyHandles().dpm;
+    }
+
+    /**
+     * Dhizuku's Device Owner component, used as the admin in DPM calls.
+     */
+    public static ComponentName getOwnerComponent() throws Exception {
+        return policyHandles().owner;
+    }
+
+    private static PolicyHandles policyHandles() throws Exception {
+        PolicyHandles handles = policy;
+        if (handles != null) {
+            return handles;
+        }
+        synchronized (lock) {
+            if (policy == null) {
+                Span span = Span.begin("dhizuku.wrapDevicePolicy");
+                try {
+                    IBinder raw = getService("device_policy");
+                    if (raw == null) {
+                        throw new IllegalStateException("device_policy service not found");
+                    }
+                    linkToDeath(raw, "device_policy");
+                    policy = new PolicyHandles(raw, Dhizuku.binderWrapper(raw), Dhizuku.getOwnerComponent());
+                } finally {
+                    span.end();
+                }
+            }
+            return policy;
+        }
+    }
+
+    // ======== PackageManager / PackageInstaller ========
+
+    /**
+     * The package binder wrapped by Dhizuku.
+     */
+    public static IBinder getPackageManager() throws Exception {
+        return installerHandles().packageManager;
+    }
+
+    /**
+     * The IPackageInstaller binder wrapped by Dhizuku.
+     */
+    public static IBinder getPackageInstaller() throws Exception {
+        return installerHandles().installer;
+    }
+
+    /**
+     * An IPackageInstaller proxy that talks through the wrapped binder.
+     */
+    public static Object getPackageInstallerInterface() throws Exception {
+        return installerHandles().installerInterface;
+    }
+
+    private static InstallerHandles installerHandles() throws Exception {
+        InstallerHandles handles = installer;
+        if (handles != null) {
+            return handles;
+        }
+        synchronized (lock) {
+            if (installer == null) {
+                Span span = Span.begin("dhizuku.wrapPackageInstaller");
+                try {
+                    IBinder rawPm = getService("package");
+                    if (rawPm == null) {
+                        throw new IllegalStateException("Could not get PackageManager binder");
+                    }
+                    IBinder wrappedPm = Dhizuku.binderWrapper(rawPm);
+
+                    // IPackageManager.getPackageInstaller() through the wrapped binder
+                    Object iPackageManager = HiddenApi.asPackageManager(wrappedPm);
+                    IBinder rawInstaller = HiddenApi.getPackageInstaller(iPackageManager).asBinder();
+                    IBinder wrappedInstaller = Dhizuku.binderWrapper(rawInstaller);
+                    Object installerInterface = HiddenApi.asPackageInstaller(wrappedInstaller);
+
+                    linkToDeath(rawPm, "package");
+                    linkToDeath(rawInstaller, "package installer");
+                    installer = new InstallerHandles(rawPm, rawInstaller, wrappedPm, wrappedInstaller,
+                            installerInterface);
+                } finally {
+                    span.end();
+                }
+            }
+            return installer;
+        }
+    }
+
+    /**
+     * Warm the Dhizuku install path in the background as soon as Dhizuku
+     * mode is known: resolve the hidden APIs and transaction codes and build
+     * the wrapped PackageInstaller, so the first install doesn't pay for it.
+     */
+    public static void prewarm() {
+        DpmAsync.call("prewarmDhizukuInstall", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Span span = Span.begin("dhizuku.prewarm");
+                try {
+                    getPackageInstallerInterface();
+                    TransactionTable.get(TransactionTable.Code.SESSION_COMMIT);
+                    return null;
+                } finally {
+                    span.end();
+                }
+            }
+        });
+    }
+
+    // ======== Invalidation ========
+
+    /**
+     * Drop all cached handles. They are rebuilt on next use.
+     */
+    public static void invalidate(String reason) {
+        synchronized (lock) {
+            if (policy == null && installer == null) {
+                return;
+            }
+            policy = null;
+            installer = null;
+        }
+        Log.d(TAG, "Binder handles dropped: " + reason);
+    }
+
+    private static void linkToDeath(final IBinder binder, final String name) {
+        try {
+            binder.linkToDeath(new IBinder.DeathRecipient() {
+                @Override
+                public void binderDied() {
+                    boolean dropped = false;
+                    synchronized (lock) {
+                        PolicyHandles p = policy;
+                        if (p != null && p.rawDpm == binder) {
+                            policy = null;
+                            dropped = true;
+                        }
+                        InstallerHandles i = installer;
+                        if (i != null && (i.rawPm == binder || i.rawInstaller == binder)) {
+                            installer = null;
+                            dropped = true;
+                        }
+                    }
+                    if (dropped) {
+                        Log.d(TAG, "Binder handles dropped: " + name + " binder died");
+                    }
+                }
+            }, 0);
+        } catch (Exception e) {
+            // Already dead; the next transact fails and the caller retries later
+            Log.d(TAG, "linkToDeath failed for " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static IBinder getService(String name) throws Exception {
+        return HiddenApi.getService(name);
+    }
+}
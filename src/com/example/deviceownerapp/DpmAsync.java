@@ -0,0 +1,240 @@
+package com.example.deviceownerapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous front end for the blocking DpmHelper calls.
+ *
+ * Each operation runs on a small shared binder executor, so independent
+ * calls overlap, and the returned future is completed on the main looper.
+ * Stages attached with thenAccept/whenComplete therefore run on the UI
+ * thread and can touch views directly.
+ *
+ * checkNotMainThread() is called from DpmHelper before binder work and logs
+ * (once per operation, with a stack trace) any call still made on the UI thread.
+ */
+public class DpmAsync {
+
+    private static final String TAG = "DpmAsync";
+    private static final int BINDER_THREADS = 4;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ExecutorService binderExecutor = Executors.newFixedThreadPool(BINDER_THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "dpm-binder-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Run task on the binder executor and complete the future on the main looper.
+     */
+    public static <T> CompletableFuture<T> call(final String operation, final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        binderExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result = null;
+                Throwable error = null;
+                try {
+                    result = task.call();
+                } catch (Throwable e) {
+                    Log.d(TAG, operation + " failed: " + e.getMessage());
+                    error = e;
+                }
+                final T finalResult = result;
+                final Throwable finalError = error;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (finalError != null) {
+                            future.completeExceptionally(finalError);
+                        } else {
+                            future.complete(finalResult);
+                        }
+                    }
+                });
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Run task on the binder executor and complete the future right there,
+     * for background callers that block on the result themselves.
+     */
+    public static <T> CompletableFuture<T> submit(final String operation, final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        binderExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    Log.d(TAG, operation + " failed: " + e.getMessage());
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    // ======== DPM Operations ========
+
+    public static CompletableFuture<DpmHelper.Mode> getActiveMode(Context context) {
+        final Context app = context.getApplicationContext();
+        return call("getActiveMode", new Callable<DpmHelper.Mode>() {
+            @Override
+            public DpmHelper.Mode call() {
+                return DpmHelper.getActiveMode(app);
+            }
+        });
+    }
+
+    public static CompletableFuture<Boolean> isApplicationHidden(Context context, final String packageName) {
+        final Context app = context.getApplicationContext();
+        return call("isApplicationHidden", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return DpmHelper.isApplicationHidden(app, packageName);
+            }
+        });
+    }
+
+    public static CompletableFuture<Boolean> setApplicationHidden(Context context, final String packageName,
+                                                                  final boolean hidden) {
+        final Context app = context.getApplicationContext();
+        return call("setApplicationHidden", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return DpmHelper.setApplicationHidden(app, packageName, hidden);
+            }
+        });
+    }
+
+    public static CompletableFuture<Integer> getPermissionGrantState(Context context, final String packageName,
+                                                                     final String permission) {
+        final Context app = context.getApplicationContext();
+        return call("getPermissionGrantState", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return DpmHelper.getPermissionGrantState(app, packageName, permission);
+            }
+        });
+    }
+
+    public static CompletableFuture<Boolean> setPermissionGrantState(Context context, final String packageName,
+                                                                     final String permission, final int grantState) {
+        final Context app = context.getApplicationContext();
+        return call("setPermissionGrantState", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return DpmHelper.setPermissionGrantState(app, packageName, permission, grantState);
+            }
+        });
+    }
+
+    // ======== Dhizuku ========
+
+    public static CompletableFuture<Boolean> isDhizukuInstalled(Context context) {
+        final Context app = context.getApplicationContext();
+        return call("isDhizukuInstalled", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return DpmHelper.isDhizukuInstalled(app);
+            }
+        });
+    }
+
+    /**
+     * Initialize Dhizuku and ask it for permission. Completes on the main
+     * looper once the user has answered in the Dhizuku app.
+     */
+    public static CompletableFuture<Boolean> requestDhizukuPermission(Context context) {
+        final Context app = context.getApplicationContext();
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        binderExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                DpmHelper.requestDhizukuPermission(app, new DpmHelper.PermissionCallback() {
+                    @Override
+                    public void onResult(final boolean granted) {
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                future.complete(granted);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Clear Device Owner (native mode only) and remove the active admin.
+     * Completes with the mode that was active before.
+     */
+    public static CompletableFuture<DpmHelper.Mode> removeAdmin(Context context) {
+        final Context app = context.getApplicationContext();
+        return call("removeAdmin", new Callable<DpmHelper.Mode>() {
+            @Override
+            public DpmHelper.Mode call() {
+                DpmHelper.Mode mode = DpmHelper.getActiveMode(app);
+                if (mode == DpmHelper.Mode.NATIVE_OWNER) {
+                    DpmHelper.clearDeviceOwner(app);
+                }
+                DpmHelper.removeActiveAdmin(app);
+                return mode;
+            }
+        });
+    }
+
+    // ======== Main thread guard ========
+
+    private static final Set<String> flaggedOperations = Collections.synchronizedSet(new HashSet<String>());
+    private static final AtomicLong mainThreadCalls = new AtomicLong();
+
+    /**
+     * Flag a binder call made on the main thread. Like a StrictMode penalty
+     * log: the call still runs, but the first offence per operation is logged
+     * with its stack trace.
+     */
+    static void checkNotMainThread(String operation) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        mainThreadCalls.incrementAndGet();
+        if (flaggedOperations.add(operation)) {
+            Log.w(TAG, "Binder call on the main thread: " + operation,
+                    new Throwable("Main thread IPC: " + operation));
+        }
+    }
+
+    /**
+     * Number of binder calls made on the main thread so far.
+     */
+    public static long getMainThreadCallCount() {
+        return mainThreadCalls.get();
+    }
+}
@@ -1,23 +1,34 @@
 package com.example.deviceownerapp;
 
-import android.app.Activity;
 import android.app.PendingIntent;
 import android.app.admin.DevicePolicyManager;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentSender;
-import android.content.ServiceConnection;
 import android.content.pm.PackageInstaller;
 import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
 import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.rosan.dhizuku.api.Dhizuku;
 import com.rosan.dhizuku.api.DhizukuRequestPermissionListener;
-import com.rosan.dhizuku.api.DhizukuUserServiceArgs;
 
 /**
  * Helper class that abstracts DevicePolicyManager access for both
@@ -26,7 +37,10 @@ import com.rosan.dhizuku.api.DhizukuUserServiceArgs;
 public class DpmHelper {
 
     private static final String TAG = "DpmHelper";
-    private static final String DHIZUKU_PACKAGE = "com.rosan.dhizuku";
+    static final String DHIZUKU_PACKAGE = "com.rosan.dhizuku";
+
+    /** How long to wait for setPermissionGrantState's RemoteCallback (API 29+). */
+    private static final long GRANT_RESULT_TIMEOUT_MS = 10000;
 
     public enum Mode {
         NONE,           // No Device Owner privileges
@@ -38,31 +52,47 @@ public class DpmHelper {
         void onResult(boolean granted);
     }
 
-    // Cache for Dhizuku initialization state
-    private static Boolean dhizukuInitialized = null;
+    // Dhizuku.init state. Written under dhizukuLock, read without it.
+    private static final Object dhizukuLock = new Object();
+    private static volatile boolean dhizukuInitialized = false;
 
     /**
      * Get the current active mode for Device Owner operations.
+     * The result is cached by ModeResolver until admin, Dhizuku package,
+     * Dhizuku permission or Dhizuku binder state changes.
      */
     public static Mode getActiveMode(Context context) {
-        DevicePolicyManager dpm = getDpm(context);
-        String packageName = context.getPackageName();
+        return ModeResolver.get(context);
+    }
 
-        // Check native Device Owner first
+    /**
+     * Resolve the mode from scratch. Only ModeResolver should call this.
+     */
+    static Mode resolveActiveMode(Context context) {
+        DpmAsync.checkNotMainThread("resolveActiveMode");
+        Span span = Span.begin("dpm.resolveActiveMode");
         try {
-            if (dpm.isDeviceOwnerApp(packageName)) {
-                return Mode.NATIVE_OWNER;
+            DevicePolicyManager dpm = getDpm(context);
+            String packageName = context.getPackageName();
+
+            // Check native Device Owner first
+            try {
+                if (dpm.isDeviceOwnerApp(packageName)) {
+                    return Mode.NATIVE_OWNER;
+                }
+            } catch (Exception e) {
+                Logger.log(context, TAG, "Error checking native DO: " + e.getMessage());
             }
-        } catch (Exception e) {
-            Logger.log(context, TAG, "Error checking native DO: " + e.getMessage());
-        }
 
-        // Check Dhizuku
-        if (isDhizukuConnected(context)) {
-            return Mode.DHIZUKU;
-        }
+            // Check Dhizuku
+            if (isDhizukuConnected(context)) {
+                return Mode.DHIZUKU;
+            }
 
-        return Mode.NONE;
+            return Mode.NONE;
+        } finally {
+            span.end();
+        }
     }
 
     /**
@@ -76,6 +106,7 @@ public class DpmHelper {
      * Check if the Dhizuku app is installed on the device.
      */
     public static boolean isDhizukuInstalled(Context context) {
+        DpmAsync.checkNotMainThread("isDhizukuInstalled");
         try {
             context.getPackageManager().getPackageInfo(DHIZUKU_PACKAGE, 0);
             return true;
@@ -88,14 +119,12 @@ public class DpmHelper {
      * Check if Dhizuku is active and we have permission.
      */
     public static boolean isDhizukuConnected(Context context) {
+        DpmAsync.checkNotMainThread("isDhizukuConnected");
         try {
             if (!isDhizukuInstalled(context)) {
                 return false;
             }
-            if (dhizukuInitialized == null || !dhizukuInitialized) {
-                dhizukuInitialized = Dhizuku.init(context);
-            }
-            if (dhizukuInitialized) {
+            if (ensureDhizukuInit(context)) {
                 return Dhizuku.isPermissionGranted();
             }
         } catch (Exception e) {
@@ -109,25 +138,48 @@ public class DpmHelper {
      * Returns true if Dhizuku is available (but permission may not be granted).
      */
     public static boolean initDhizuku(Context context) {
+        DpmAsync.checkNotMainThread("initDhizuku");
         try {
             if (!isDhizukuInstalled(context)) {
                 return false;
             }
-            dhizukuInitialized = Dhizuku.init(context);
-            return dhizukuInitialized;
+            synchronized (dhizukuLock) {
+                dhizukuInitialized = Dhizuku.init(context);
+                return dhizukuInitialized;
+            }
         } catch (Exception e) {
             Logger.log(context, TAG, "Error initializing Dhizuku: " + e.getMessage());
             return false;
         }
     }
 
+    private static boolean ensureDhizukuInit(Context context) {
+        if (dhizukuInitialized) {
+            return true;
+        }
+        synchronized (dhizukuLock) {
+            if (!dhizukuInitialized) {
+                dhizukuInitialized = Dhizuku.init(context);
+            }
+            return dhizukuInitialized;
+        }
+    }
+
+    /**
+     * Forget the Dhizuku.init result so the next check initializes again.
+     */
+    static void resetDhizukuInit() {
+        dhizukuInitialized = false;
+    }
+
     /**
      * Request permission from Dhizuku.
-     * This will open the Dhizuku app for user authorization.
+     * This will open the Dhizuku app for user authorization. The callback
+     * runs on a binder thread; UI callers use DpmAsync.requestDhizukuPermission.
      */
-    public static void requestDhizukuPermission(Activity activity, final PermissionCallback callback) {
+    public static void requestDhizukuPermission(Context context, final PermissionCallback callback) {
         try {
-            if (!initDhizuku(activity)) {
+            if (!initDhizuku(context)) {
                 callback.onResult(false);
                 return;
             }
@@ -136,19 +188,14 @@ public class DpmHelper {
                 @Override
                 public void onRequestPermission(int grantResult) throws RemoteException {
                     final boolean granted = grantResult == PackageManager.PERMISSION_GRANTED;
-                    // Clear cache to re-check
-                    dhizukuInitialized = null;
-                    // Run callback on UI thread
-                    activity.runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            callback.onResult(granted);
-                        }
-                    });
+                    // Clear caches to re-check
+                    resetDhizukuInit();
+                    ModeResolver.invalidate("Dhizuku permission result");
+                    callback.onResult(granted);
                 }
             });
         } catch (Exception e) {
-            Logger.log(activity, TAG, "Error requesting Dhizuku permission: " + e.getMessage());
+            Logger.log(context, TAG, "Error requesting Dhizuku permission: " + e.getMessage());
             callback.onResult(false);
         }
     }
@@ -159,23 +206,42 @@ public class DpmHelper {
      * Hide or unhide an application.
      */
     public static boolean setApplicationHidden(Context context, String packageName, boolean hidden) {
-        Mode mode = getActiveMode(context);
-        if (mode == Mode.NONE) {
-            return false;
-        }
-
+        DpmAsync.checkNotMainThread("setApplicationHidden");
+        Span span = Span.begin("dpm.setApplicationHidden");
         try {
-            if (mode == Mode.NATIVE_OWNER) {
-                DevicePolicyManager dpm = getDpm(context);
-                ComponentName admin = getAdminComponent(context);
-                return dpm.setApplicationHidden(admin, packageName, hidden);
-            } else {
-                // Dhizuku mode - use binder wrapper
-                return setApplicationHiddenDhizuku(context, packageName, hidden);
+            Mode mode = getActiveMode(context);
+            if (mode == Mode.NONE) {
+                return false;
             }
-        } catch (Exception e) {
-            Logger.log(context, TAG, "setApplicationHidden error: " + e.getMessage());
-            return false;
+
+            try {
+                boolean success;
+                if (mode == Mode.NATIVE_OWNER) {
+                    DevicePolicyManager dpm = getDpm(context);
+                    ComponentName admin = getAdminComponent(context);
+                    success = dpm.setApplicationHidden(admin, packageName, hidden);
+                } else {
+                    // Dhizuku mode - use binder wrapper
+                    success = setApplicationHiddenDhizuku(context, packageName, hidden);
+                }
+                if (success) {
+                    // Keep the app list's bulk result, and any query still filling one, in sync
+                    HiddenStateIndex states = hiddenStates;
+                    if (states != null) {
+                        states.setHidden(packageName, hidden);
+                    }
+                    HiddenStateIndex filling = fillingHiddenStates;
+                    if (filling != null) {
+                        filling.setHidden(packageName, hidden);
+                    }
+                }
+                return success;
+            } catch (Exception e) {
+                Logger.log(context, TAG, "setApplicationHidden error: " + e.getMessage());
+                return false;
+            }
+        } finally {
+            span.end();
         }
     }
 
@@ -187,19 +253,92 @@ public class DpmHelper {
         if (mode == Mode.NONE) {
             return false;
         }
+        return isApplicationHidden(context, mode, packageName);
+    }
+
+    public interface HiddenStatesCallback {
+        void onResult(HiddenStateIndex states);
+    }
 
+    private static final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
+    /** Last completed query; never a partly filled index. */
+    private static volatile HiddenStateIndex hiddenStates = null;
+    /** The index the query thread is filling, if any. */
+    private static volatile HiddenStateIndex fillingHiddenStates = null;
+
+    /**
+     * Look up the hidden state of every package on a background thread.
+     * The callback runs on the main thread with one bit per package, in the
+     * order given. The index is published to getHiddenStates() only once
+     * every bit is filled, and keeps tracking setApplicationHidden calls
+     * until the next query replaces it. A package changed while the query
+     * runs keeps the changed bit rather than the one the query read.
+     */
+    public static void queryHiddenStates(Context context, Collection<String> packageNames,
+                                         final HiddenStatesCallback callback) {
+        final Context appContext = context.getApplicationContext();
+        final HiddenStateIndex index = new HiddenStateIndex(packageNames);
+
+        queryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                fillingHiddenStates = index;
+                Mode mode = getActiveMode(appContext);
+                if (mode != Mode.NONE) {
+                    for (int i = 0; i < index.size(); i++) {
+                        // Skipped if setApplicationHidden changed it while this ran
+                        index.fill(i, isApplicationHidden(appContext, mode, index.getPackage(i)));
+                    }
+                }
+                hiddenStates = index;
+                fillingHiddenStates = null;
+                Log.d(TAG, "Queried " + index.size() + " hidden states in "
+                        + (SystemClock.elapsedRealtime() - start) + " ms");
+
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResult(index);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * The index from the last completed queryHiddenStates call, or null.
+     */
+    public static HiddenStateIndex getHiddenStates() {
+        return hiddenStates;
+    }
+
+    /**
+     * Forget the last bulk result, e.g. after the mode changed.
+     */
+    static void dropHiddenStates() {
+        hiddenStates = null;
+    }
+
+    private static boolean isApplicationHidden(Context context, Mode mode, String packageName) {
+        DpmAsync.checkNotMainThread("isApplicationHidden");
+        Span span = Span.begin("dpm.isApplicationHidden");
         try {
-            if (mode == Mode.NATIVE_OWNER) {
-                DevicePolicyManager dpm = getDpm(context);
-                ComponentName admin = getAdminComponent(context);
-                return dpm.isApplicationHidden(admin, packageName);
-            } else {
-                // Dhizuku mode - use binder wrapper
-                return isApplicationHiddenDhizuku(context, packageName);
+            try {
+                if (mode == Mode.NATIVE_OWNER) {
+                    DevicePolicyManager dpm = getDpm(context);
+                    ComponentName admin = getAdminComponent(context);
+                    return dpm.isApplicationHidden(admin, packageName);
+                } else {
+                    // Dhizuku mode - use binder wrapper
+                    return isApplicationHiddenDhizuku(context, packageName);
+                }
+            } catch (Exception e) {
+                Logger.log(context, TAG, "isApplicationHidden error: " + e.getMessage());
+                return false;
             }
-        } catch (Exception e) {
-            Logger.log(context, TAG, "isApplicationHidden error: " + e.getMessage());
-            return false;
+        } finally {
+            span.end();
         }
     }
 
@@ -211,19 +350,31 @@ public class DpmHelper {
         if (mode == Mode.NONE) {
             return DevicePolicyManager.PERMISSION_GRANT_STATE_DEFAULT;
         }
+        return getPermissionGrantState(context, mode, packageName, permission);
+    }
 
+    /**
+     * Get the permission grant state with an already resolved mode other than NONE.
+     */
+    static int getPermissionGrantState(Context context, Mode mode, String packageName, String permission) {
+        DpmAsync.checkNotMainThread("getPermissionGrantState");
+        Span span = Span.begin("dpm.getPermissionGrantState");
         try {
-            if (mode == Mode.NATIVE_OWNER) {
-                DevicePolicyManager dpm = getDpm(context);
-                ComponentName admin = getAdminComponent(context);
-                return dpm.getPermissionGrantState(admin, packageName, permission);
-            } else {
-                // Dhizuku mode
-                return getPermissionGrantStateDhizuku(context, packageName, permission);
+            try {
+                if (mode == Mode.NATIVE_OWNER) {
+                    DevicePolicyManager dpm = getDpm(context);
+                    ComponentName admin = getAdminComponent(context);
+                    return dpm.getPermissionGrantState(admin, packageName, permission);
+                } else {
+                    // Dhizuku mode
+                    return getPermissionGrantStateDhizuku(context, packageName, permission);
+                }
+            } catch (Exception e) {
+                Logger.log(context, TAG, "getPermissionGrantState error: " + e.getMessage());
+                return DevicePolicyManager.PERMISSION_GRANT_STATE_DEFAULT;
             }
-        } catch (Exception e) {
-            Logger.log(context, TAG, "getPermissionGrantState error: " + e.getMessage());
-            return DevicePolicyManager.PERMISSION_GRANT_STATE_DEFAULT;
+        } finally {
+            span.end();
         }
     }
 
@@ -232,23 +383,29 @@ public class DpmHelper {
      */
     public static boolean setPermissionGrantState(Context context, String packageName,
                                                    String permission, int grantState) {
-        Mode mode = getActiveMode(context);
-        if (mode == Mode.NONE) {
-            return false;
-        }
-
+        DpmAsync.checkNotMainThread("setPermissionGrantState");
+        Span span = Span.begin("dpm.setPermissionGrantState");
         try {
-            if (mode == Mode.NATIVE_OWNER) {
-                DevicePolicyManager dpm = getDpm(context);
-                ComponentName admin = getAdminComponent(context);
-                return dpm.setPermissionGrantState(admin, packageName, permission, grantState);
-            } else {
-                // Dhizuku mode
-                return setPermissionGrantStateDhizuku(context, packageName, permission, grantState);
+            Mode mode = getActiveMode(context);
+            if (mode == Mode.NONE) {
+                return false;
             }
-        } catch (Exception e) {
-            Logger.log(context, TAG, "setPermissionGrantState error: " + e.getMessage());
-            return false;
+
+            try {
+                if (mode == Mode.NATIVE_OWNER) {
+                    DevicePolicyManager dpm = getDpm(context);
+                    ComponentName admin = getAdminComponent(context);
+                    return dpm.setPermissionGrantState(admin, packageName, permission, grantState);
+                } else {
+                    // Dhizuku mode
+                    return setPermissionGrantStateDhizuku(context, packageName, permission, grantState);
+                }
+            } catch (Exception e) {
+                Logger.log(context, TAG, "setPermissionGrantState error: " + e.getMessage());
+                return false;
+            }
+        } finally {
+            span.end();
         }
     }
 
@@ -256,11 +413,13 @@ public class DpmHelper {
      * Clear Device Owner status (only works in native mode).
      */
     public static void clearDeviceOwner(Context context) {
+        DpmAsync.checkNotMainThread("clearDeviceOwner");
         Mode mode = getActiveMode(context);
         if (mode == Mode.NATIVE_OWNER) {
             try {
                 DevicePolicyManager dpm = getDpm(context);
                 dpm.clearDeviceOwnerApp(context.getPackageName());
+                ModeResolver.invalidate("Device Owner cleared");
             } catch (Exception e) {
                 Logger.log(context, TAG, "clearDeviceOwner error: " + e.getMessage());
             }
@@ -271,6 +430,7 @@ public class DpmHelper {
      * Remove active admin (only works in native mode).
      */
     public static void removeActiveAdmin(Context context) {
+        DpmAsync.checkNotMainThread("removeActiveAdmin");
         try {
             DevicePolicyManager dpm = getDpm(context);
             ComponentName admin = getAdminComponent(context);
@@ -297,41 +457,11 @@ public class DpmHelper {
 
     private static boolean setApplicationHiddenDhizuku(Context context, String packageName, boolean hidden) {
         try {
-            // Get the DevicePolicyManager service binder
-            Object dpmService = getDpmService();
-            if (dpmService == null) return false;
-
-            // Get the wrapped binder through Dhizuku
-            IBinder originalBinder = (IBinder) dpmService.getClass()
-                    .getMethod("asBinder").invoke(dpmService);
-            IBinder wrappedBinder = Dhizuku.binderWrapper(originalBinder);
-
             // Get Dhizuku's owner component - use Dhizuku's package as caller since we're proxying through it
-            ComponentName dhizukuAdmin = Dhizuku.getOwnerComponent();
-            String callerPackage = dhizukuAdmin.getPackageName(); // Use Dhizuku's package, not ours
-
-            // Build the transaction manually
-            Parcel data = Parcel.obtain();
-            Parcel reply = Parcel.obtain();
-            try {
-                data.writeInterfaceToken("android.app.admin.IDevicePolicyManager");
-                // Method signature varies by Android version
-                // For Android 8.1 (API 27): setApplicationHidden(ComponentName admin, String callerPackage, String packageName, boolean hidden)
-                data.writeInt(1); // admin is not null
-                dhizukuAdmin.writeToParcel(data, 0);
-                data.writeString(callerPackage); // callerPackage - must be Dhizuku's package
-                data.writeString(packageName);
-                data.writeInt(hidden ? 1 : 0);
-
-                // Transaction code for setApplicationHidden (varies by Android version)
-                int transactionCode = getTransactionCode("setApplicationHidden");
-                wrappedBinder.transact(transactionCode, data, reply, 0);
-                reply.readException();
-                return reply.readInt() != 0;
-            } finally {
-                data.recycle();
-                reply.recycle();
-            }
+            ComponentName dhizukuAdmin = DhizukuBinders.getOwnerComponent();
+            return (Boolean) TransactionSpec.get(TransactionTable.Code.DPM_SET_APPLICATION_HIDDEN)
+                    .transact(DhizukuBinders.getDevicePolicy(),
+                            dhizukuAdmin, dhizukuAdmin.getPackageName(), packageName, hidden);
         } catch (Exception e) {
             Logger.log(context, TAG, "setApplicationHiddenDhizuku error: " + e.getMessage());
             return false;
@@ -340,33 +470,10 @@ public class DpmHelper {
 
     private static boolean isApplicationHiddenDhizuku(Context context, String packageName) {
         try {
-            Object dpmService = getDpmService();
-            if (dpmService == null) return false;
-
-            IBinder originalBinder = (IBinder) dpmService.getClass()
-                    .getMethod("asBinder").invoke(dpmService);
-            IBinder wrappedBinder = Dhizuku.binderWrapper(originalBinder);
-
-            ComponentName dhizukuAdmin = Dhizuku.getOwnerComponent();
-            String callerPackage = dhizukuAdmin.getPackageName(); // Use Dhizuku's package
-
-            Parcel data = Parcel.obtain();
-            Parcel reply = Parcel.obtain();
-            try {
-                data.writeInterfaceToken("android.app.admin.IDevicePolicyManager");
-                data.writeInt(1); // admin is not null
-                dhizukuAdmin.writeToParcel(data, 0);
-                data.writeString(callerPackage);
-                data.writeString(packageName);
-
-                int transactionCode = getTransactionCode("isApplicationHidden");
-                wrappedBinder.transact(transactionCode, data, reply, 0);
-                reply.readException();
-                return reply.readInt() != 0;
-            } finally {
-                data.recycle();
-                reply.recycle();
-            }
+            ComponentName dhizukuAdmin = DhizukuBinders.getOwnerComponent();
+            return (Boolean) TransactionSpec.get(TransactionTable.Code.DPM_IS_APPLICATION_HIDDEN)
+                    .transact(DhizukuBinders.getDevicePolicy(),
+                            dhizukuAdmin, dhizukuAdmin.getPackageName(), packageName);
         } catch (Exception e) {
             Logger.log(context, TAG, "isApplicationHiddenDhizuku error: " + e.getMessage());
             return false;
@@ -375,34 +482,10 @@ public class DpmHelper {
 
     private static int getPermissionGrantStateDhizuku(Context context, String packageName, String permission) {
         try {
-            Object dpmService = getDpmService();
-            if (dpmService == null) return DevicePolicyManager.PERMISSION_GRANT_STATE_DEFAULT;
-
-            IBinder originalBinder = (IBinder) dpmService.getClass()
-                    .getMethod("asBinder").invoke(dpmService);
-            IBinder wrappedBinder = Dhizuku.binderWrapper(originalBinder);
-
-            ComponentName dhizukuAdmin = Dhizuku.getOwnerComponent();
-            String callerPackage = dhizukuAdmin.getPackageName(); // Use Dhizuku's package
-
-            Parcel data = Parcel.obtain();
-            Parcel reply = Parcel.obtain();
-            try {
-                data.writeInterfaceToken("android.app.admin.IDevicePolicyManager");
-                data.writeInt(1); // admin is not null
-                dhizukuAdmin.writeToParcel(data, 0);
-                data.writeString(callerPackage);
-                data.writeString(packageName);
-                data.writeString(permission);
-
-                int transactionCode = getTransactionCode("getPermissionGrantState");
-                wrappedBinder.transact(transactionCode, data, reply, 0);
-                reply.readException();
-                return reply.readInt();
-            } finally {
-                data.recycle();
-                reply.recycle();
-            }
+            ComponentName dhizukuAdmin = DhizukuBinders.getOwnerComponent();
+            return (Integer) TransactionSpec.get(TransactionTable.Code.DPM_GET_PERMISSION_GRANT_STATE)
+                    .transact(DhizukuBinders.getDevicePolicy(),
+                            dhizukuAdmin, dhizukuAdmin.getPackageName(), packageName, permission);
         } catch (Exception e) {
             Logger.log(context, TAG, "getPermissionGrantStateDhizuku error: " + e.getMessage());
             return DevicePolicyManager.PERMISSION_GRANT_STATE_DEFAULT;
@@ -412,87 +495,36 @@ public class DpmHelper {
     private static boolean setPermissionGrantStateDhizuku(Context context, String packageName,
                                                           String permission, int grantState) {
         try {
-            Object dpmService = getDpmService();
-            if (dpmService == null) return false;
-
-            IBinder originalBinder = (IBinder) dpmService.getClass()
-                    .getMethod("asBinder").invoke(dpmService);
-            IBinder wrappedBinder = Dhizuku.binderWrapper(originalBinder);
-
-            ComponentName dhizukuAdmin = Dhizuku.getOwnerComponent();
-            String callerPackage = dhizukuAdmin.getPackageName(); // Use Dhizuku's package
+            ComponentName dhizukuAdmin = DhizukuBinders.getOwnerComponent();
+            TransactionSpec spec = TransactionSpec.get(TransactionTable.Code.DPM_SET_PERMISSION_GRANT_STATE);
+            if (spec.reply == TransactionSpec.Reply.BOOLEAN) {
+                return (Boolean) spec.transact(DhizukuBinders.getDevicePolicy(),
+                        dhizukuAdmin, dhizukuAdmin.getPackageName(), packageName, permission, grantState);
+            }
 
-            Parcel data = Parcel.obtain();
-            Parcel reply = Parcel.obtain();
-            try {
-                data.writeInterfaceToken("android.app.admin.IDevicePolicyManager");
-                data.writeInt(1); // admin is not null
-                dhizukuAdmin.writeToParcel(data, 0);
-                data.writeString(callerPackage);
-                data.writeString(packageName);
-                data.writeString(permission);
-                data.writeInt(grantState);
-
-                int transactionCode = getTransactionCode("setPermissionGrantState");
-                wrappedBinder.transact(transactionCode, data, reply, 0);
-                reply.readException();
-                return reply.readInt() != 0;
-            } finally {
-                data.recycle();
-                reply.recycle();
+            // API 29+: the result comes back through a RemoteCallback, a null Bundle meaning failure
+            final CountDownLatch done = new CountDownLatch(1);
+            final AtomicBoolean granted = new AtomicBoolean(false);
+            Parcelable callback = HiddenApi.newRemoteCallback(new HiddenApi.ResultListener() {
+                @Override
+                public void onResult(Bundle result) {
+                    granted.set(result != null);
+                    done.countDown();
+                }
+            });
+            spec.transact(DhizukuBinders.getDevicePolicy(),
+                    dhizukuAdmin, dhizukuAdmin.getPackageName(), packageName, permission, grantState, callback);
+            if (!done.await(GRANT_RESULT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Logger.log(context, TAG, "setPermissionGrantStateDhizuku: no result for " + permission);
+                return false;
             }
+            return granted.get();
         } catch (Exception e) {
             Logger.log(context, TAG, "setPermissionGrantStateDhizuku error: " + e.getMessage());
             return false;
         }
     }
 
-    private static Object getDpmService() {
-        try {
-            Class<?> serviceManagerClass = Class.forName("android.os.ServiceManager");
-            java.lang.reflect.Method getServiceMethod = serviceManagerClass
-                    .getMethod("getService", String.class);
-            IBinder binder = (IBinder) getServiceMethod.invoke(null, "device_policy");
-            if (binder == null) return null;
-
-            Class<?> stubClass = Class.forName("android.app.admin.IDevicePolicyManager$Stub");
-            java.lang.reflect.Method asInterfaceMethod = stubClass
-                    .getMethod("asInterface", IBinder.class);
-            return asInterfaceMethod.invoke(null, binder);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    /**
-     * Get the transaction code for a DevicePolicyManager method.
-     * Uses reflection to find the TRANSACTION_* field in IDevicePolicyManager.Stub
-     */
-    private static int getTransactionCode(String methodName) {
-        try {
-            Class<?> stubClass = Class.forName("android.app.admin.IDevicePolicyManager$Stub");
-            String fieldName = "TRANSACTION_" + methodName;
-            java.lang.reflect.Field field = stubClass.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return field.getInt(null);
-        } catch (Exception e) {
-            // Fallback to hardcoded values for Android 8.1 (API 27)
-            // These may need adjustment for different Android versions
-            switch (methodName) {
-                case "setApplicationHidden":
-                    return 132;
-                case "isApplicationHidden":
-                    return 133;
-                case "getPermissionGrantState":
-                    return 213;
-                case "setPermissionGrantState":
-                    return 212;
-                default:
-                    return 0;
-            }
-        }
-    }
-
     // ======== Package Installation Support ========
 
     /**
@@ -516,152 +548,138 @@ public class DpmHelper {
     }
 
     /**
-     * Install an APK through Dhizuku's wrapped PackageInstaller binder.
-     * This creates the session with Dhizuku's UID for silent installation.
+     * An install session created and opened through Dhizuku's wrapped
+     * PackageInstaller binder, so it is owned by Dhizuku's UID.
+     * Write any number of APKs to session, then commitDhizukuSession() once.
+     */
+    public static class DhizukuSession {
+        public final int sessionId;
+        public final PackageInstaller.Session session;
+        DhizukuSession(int sessionId, PackageInstaller.Session session) {
+            this.sessionId = sessionId;
+            this.session = session;
+        }
+
+        public void abandon() {
+            try { session.abandon(); } catch (Exception ignored) {}
+            Span.cancelPending("install.commitToResult", sessionId);
+        }
+    }
+
+    /**
+     * Create and open a session through Dhizuku's wrapped PackageInstaller.
      *
      * Based on AuroraStore's DhizukuInstaller approach:
      * 1. Get IPackageInstaller through Dhizuku-wrapped binder
      * 2. Create session through wrapped installer
      * 3. Open session - this returns a session that's owned by Dhizuku
-     * 4. Write APK data directly to session
-     * 5. Commit session
      */
-    public static DhizukuInstallResult installApkThroughDhizuku(Context context, java.io.InputStream apkStream, String apkName) {
+    public static DhizukuSession openDhizukuSession(Context context) throws Exception {
+        DpmAsync.checkNotMainThread("openDhizukuSession");
         if (getActiveMode(context) != Mode.DHIZUKU) {
-            return new DhizukuInstallResult(false, "Not in Dhizuku mode");
+            throw new IllegalStateException("Not in Dhizuku mode");
         }
+        HiddenApi.requireDhizukuInstall();
 
-        PackageInstaller.Session session = null;
-        int sessionId = -1;
-
-        try {
-            // Get the PackageInstaller service binder and wrap it
-            IBinder pmBinder = getPackageManagerBinder();
-            if (pmBinder == null) {
-                return new DhizukuInstallResult(false, "Could not get PackageManager binder");
-            }
-
-            IBinder wrappedPmBinder = Dhizuku.binderWrapper(pmBinder);
-
-            // Get IPackageManager from wrapped binder
-            Class<?> pmStubClass = Class.forName("android.content.pm.IPackageManager$Stub");
-            java.lang.reflect.Method asInterfaceMethod = pmStubClass.getMethod("asInterface", IBinder.class);
-            Object iPackageManager = asInterfaceMethod.invoke(null, wrappedPmBinder);
+        // Cached IPackageInstaller, already wrapped through Dhizuku
+        Object wrappedIPackageInstaller = DhizukuBinders.getPackageInstallerInterface();
 
-            // Get IPackageInstaller from IPackageManager
-            java.lang.reflect.Method getInstallerMethod = iPackageManager.getClass().getMethod("getPackageInstaller");
-            Object iPackageInstaller = getInstallerMethod.invoke(iPackageManager);
+        // Create session params
+        PackageInstaller.SessionParams params = new PackageInstaller.SessionParams(
+                PackageInstaller.SessionParams.MODE_FULL_INSTALL);
 
-            // Wrap the installer binder too
-            java.lang.reflect.Method asBinderMethod = iPackageInstaller.getClass().getMethod("asBinder");
-            IBinder installerBinder = (IBinder) asBinderMethod.invoke(iPackageInstaller);
-            IBinder wrappedInstallerBinder = Dhizuku.binderWrapper(installerBinder);
+        // Create session through wrapped installer
+        String dhizukuPackage = DhizukuBinders.getOwnerComponent().getPackageName();
+        int sessionId = HiddenApi.createSession(wrappedIPackageInstaller, params, dhizukuPackage, 0);
 
-            // Get IPackageInstaller interface from wrapped binder
-            Class<?> installerStubClass = Class.forName("android.content.pm.IPackageInstaller$Stub");
-            java.lang.reflect.Method installerAsInterface = installerStubClass.getMethod("asInterface", IBinder.class);
-            Object wrappedIPackageInstaller = installerAsInterface.invoke(null, wrappedInstallerBinder);
+        Logger.log(context, TAG, "Created Dhizuku session: " + sessionId);
 
-            // Create session params
-            PackageInstaller.SessionParams params = new PackageInstaller.SessionParams(
-                    PackageInstaller.SessionParams.MODE_FULL_INSTALL);
+        try {
+            // Open session through wrapped installer and wrap the session binder
+            IBinder sessionBinder = HiddenApi.openSession(wrappedIPackageInstaller, sessionId).asBinder();
+            IBinder wrappedSessionBinder = Dhizuku.binderWrapper(sessionBinder);
 
-            // Create session through wrapped installer
-            java.lang.reflect.Method createSessionMethod = wrappedIPackageInstaller.getClass()
-                    .getMethod("createSession", PackageInstaller.SessionParams.class, String.class, String.class, int.class);
+            // Public Session API over the wrapped IPackageInstallerSession
+            PackageInstaller.Session session = HiddenApi.newSession(HiddenApi.asSession(wrappedSessionBinder));
+            return new DhizukuSession(sessionId, session);
+        } catch (Exception e) {
+            abandonSessionThroughBinder(((IInterface) wrappedIPackageInstaller).asBinder(),
+                    sessionId, dhizukuPackage);
+            throw e;
+        }
+    }
 
-            String dhizukuPackage = Dhizuku.getOwnerComponent().getPackageName();
-            sessionId = (int) createSessionMethod.invoke(wrappedIPackageInstaller, params, dhizukuPackage, null, 0);
+    /**
+     * Commit a session from openDhizukuSession(). The session is already
+     * wrapped, so this commits it directly instead of going through
+     * commitSession().
+     */
+    public static void commitDhizukuSession(Context context, DhizukuSession dhizukuSession) {
+        commitDhizukuSession(context, dhizukuSession.session, dhizukuSession.sessionId);
+    }
 
-            Logger.log(context, TAG, "Created Dhizuku session: " + sessionId);
+    public static void commitDhizukuSession(Context context, PackageInstaller.Session session, int sessionId) {
+        DpmAsync.checkNotMainThread("commitDhizukuSession");
+        Intent intent = new Intent(context, InstallResultReceiver.class);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (android.os.Build.VERSION.SDK_INT >= 31) {
+            flags |= 33554432; // FLAG_MUTABLE
+        }
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, sessionId, intent, flags);
+        Span.startPending("install.commitToResult", sessionId);
+        Span span = Span.begin("session.commit");
+        try {
+            session.commit(pendingIntent.getIntentSender());
+        } catch (RuntimeException e) {
+            // Not committed, so no result will arrive
+            Span.cancelPending("install.commitToResult", sessionId);
+            throw e;
+        } finally {
+            span.end();
+        }
+        session.close();
 
-            // Open session through wrapped installer
-            java.lang.reflect.Method openSessionMethod = wrappedIPackageInstaller.getClass()
-                    .getMethod("openSession", int.class);
-            Object iSession = openSessionMethod.invoke(wrappedIPackageInstaller, sessionId);
+        Logger.log(context, TAG, "Committed Dhizuku session: " + sessionId);
+    }
 
-            // Wrap the session binder
-            java.lang.reflect.Method sessionAsBinderMethod = iSession.getClass().getMethod("asBinder");
-            IBinder sessionBinder = (IBinder) sessionAsBinderMethod.invoke(iSession);
-            IBinder wrappedSessionBinder = Dhizuku.binderWrapper(sessionBinder);
+    /**
+     * Install a single APK through Dhizuku's wrapped PackageInstaller binder.
+     * This creates the session with Dhizuku's UID for silent installation.
+     */
+    public static DhizukuInstallResult installApkThroughDhizuku(Context context, java.io.InputStream apkStream, String apkName) {
+        DpmAsync.checkNotMainThread("installApkThroughDhizuku");
+        if (getActiveMode(context) != Mode.DHIZUKU) {
+            return new DhizukuInstallResult(false, "Not in Dhizuku mode");
+        }
 
-            // Get IPackageInstallerSession from wrapped binder
-            Class<?> sessionStubClass = Class.forName("android.content.pm.IPackageInstallerSession$Stub");
-            java.lang.reflect.Method sessionAsInterface = sessionStubClass.getMethod("asInterface", IBinder.class);
-            Object wrappedISession = sessionAsInterface.invoke(null, wrappedSessionBinder);
+        DhizukuSession dhizukuSession = null;
 
-            // Create a PackageInstaller.Session wrapper using reflection
-            // The session has a private constructor that takes IPackageInstallerSession
-            java.lang.reflect.Constructor<?> sessionConstructor = PackageInstaller.Session.class
-                    .getDeclaredConstructor(Class.forName("android.content.pm.IPackageInstallerSession"));
-            sessionConstructor.setAccessible(true);
-            session = (PackageInstaller.Session) sessionConstructor.newInstance(wrappedISession);
+        try {
+            dhizukuSession = openDhizukuSession(context);
 
             // Write APK data to session
-            try (java.io.OutputStream out = session.openWrite(apkName, 0, -1)) {
-                byte[] buffer = new byte[65536];
-                int len;
-                while ((len = apkStream.read(buffer)) != -1) {
-                    out.write(buffer, 0, len);
-                }
-                session.fsync(out);
-            }
+            SessionWriter.write(dhizukuSession.session, apkName, apkStream, -1, new byte[65536]);
 
             Logger.log(context, TAG, "Written APK to Dhizuku session");
 
-            // Commit the session
-            Intent intent = new Intent(context, InstallResultReceiver.class);
-            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-            if (android.os.Build.VERSION.SDK_INT >= 31) {
-                flags |= 33554432; // FLAG_MUTABLE
-            }
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(context, sessionId, intent, flags);
-            session.commit(pendingIntent.getIntentSender());
-            session.close();
-
-            Logger.log(context, TAG, "Committed Dhizuku session");
-
+            commitDhizukuSession(context, dhizukuSession);
             return new DhizukuInstallResult(true, null);
 
         } catch (Exception e) {
             Logger.log(context, TAG, "installApkThroughDhizuku error: " + e.getMessage());
             e.printStackTrace();
-            if (session != null) {
-                try { session.abandon(); } catch (Exception ignored) {}
+            if (dhizukuSession != null) {
+                dhizukuSession.abandon();
             }
             return new DhizukuInstallResult(false, e.getMessage());
         }
     }
 
-    private static IBinder getPackageManagerBinder() {
-        try {
-            Class<?> serviceManagerClass = Class.forName("android.os.ServiceManager");
-            java.lang.reflect.Method getServiceMethod = serviceManagerClass.getMethod("getService", String.class);
-            return (IBinder) getServiceMethod.invoke(null, "package");
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
     private static IBinder getPackageInstallerBinder() {
         try {
-            Class<?> serviceManagerClass = Class.forName("android.os.ServiceManager");
-            java.lang.reflect.Method getServiceMethod = serviceManagerClass.getMethod("getService", String.class);
-            IBinder pmBinder = (IBinder) getServiceMethod.invoke(null, "package");
+            IBinder pmBinder = HiddenApi.getService("package");
             if (pmBinder == null) return null;
-
-            // Get PackageManager stub
-            Class<?> pmStubClass = Class.forName("android.content.pm.IPackageManager$Stub");
-            java.lang.reflect.Method asInterfaceMethod = pmStubClass.getMethod("asInterface", IBinder.class);
-            Object pm = asInterfaceMethod.invoke(null, pmBinder);
-
-            // Get PackageInstaller from PackageManager
-            java.lang.reflect.Method getInstallerMethod = pm.getClass().getMethod("getPackageInstaller");
-            Object installer = getInstallerMethod.invoke(pm);
-
-            // Get the binder from the installer proxy
-            java.lang.reflect.Method asBinderMethod = installer.getClass().getMethod("asBinder");
-            return (IBinder) asBinderMethod.invoke(installer);
+            return HiddenApi.getPackageInstaller(HiddenApi.asPackageManager(pmBinder)).asBinder();
         } catch (Exception e) {
             return null;
         }
@@ -680,7 +698,7 @@ public class DpmHelper {
             data.writeString(callerPackage); // installerPackageName
 
             // Transaction code for createSession
-            int transactionCode = getPackageInstallerTransactionCode("createSession");
+            int transactionCode = TransactionTable.require(TransactionTable.Code.INSTALLER_CREATE_SESSION);
             installer.transact(transactionCode, data, reply, 0);
             reply.readException();
             return reply.readInt();
@@ -699,7 +717,7 @@ public class DpmHelper {
             data.writeInterfaceToken("android.content.pm.IPackageInstaller");
             data.writeInt(sessionId);
 
-            int transactionCode = getPackageInstallerTransactionCode("openSession");
+            int transactionCode = TransactionTable.require(TransactionTable.Code.INSTALLER_OPEN_SESSION);
             installer.transact(transactionCode, data, reply, 0);
             reply.readException();
 
@@ -721,7 +739,7 @@ public class DpmHelper {
             data.writeInterfaceToken("android.content.pm.IPackageInstaller");
             data.writeInt(sessionId);
 
-            int transactionCode = getPackageInstallerTransactionCode("abandonSession");
+            int transactionCode = TransactionTable.require(TransactionTable.Code.INSTALLER_ABANDON_SESSION);
             installer.transact(transactionCode, data, reply, 0);
             reply.readException();
         } catch (Exception ignored) {
@@ -766,7 +784,7 @@ public class DpmHelper {
                 data.writeLong(0); // offsetBytes
                 data.writeLong(-1); // lengthBytes (-1 = unknown)
 
-                int transactionCode = getSessionTransactionCode("openWrite");
+                int transactionCode = TransactionTable.require(TransactionTable.Code.SESSION_OPEN_WRITE);
                 session.transact(transactionCode, data, reply, 0);
                 reply.readException();
 
@@ -785,11 +803,10 @@ public class DpmHelper {
                         while ((len = in.read(buffer)) != -1) {
                             out.write(buffer, 0, len);
                         }
+                        // fsync is not a session transaction, sync the returned fd directly
+                        ((java.io.FileOutputStream) out).getFD().sync();
                     }
                     writerThread.join(30000);
-
-                    // Call fsync
-                    fsyncSessionThroughBinder(session, name);
                     return true;
                 }
             } finally {
@@ -804,70 +821,14 @@ public class DpmHelper {
         }
     }
 
-    private static void fsyncSessionThroughBinder(IBinder session, String name) {
-        Parcel data = Parcel.obtain();
-        Parcel reply = Parcel.obtain();
-        try {
-            data.writeInterfaceToken("android.content.pm.IPackageInstallerSession");
-            data.writeString(name);
-
-            int transactionCode = getSessionTransactionCode("fsync");
-            session.transact(transactionCode, data, reply, 0);
-            reply.readException();
-        } catch (Exception ignored) {
-        } finally {
-            data.recycle();
-            reply.recycle();
-        }
-    }
-
     private static void commitSessionThroughBinder(Context context, IBinder session, int sessionId) {
-        Parcel data = Parcel.obtain();
-        Parcel reply = Parcel.obtain();
         try {
-            data.writeInterfaceToken("android.content.pm.IPackageInstallerSession");
-
             // Create an IntentSender for the result
             Intent intent = new Intent(Intent.ACTION_PACKAGE_ADDED);
-            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-            if (android.os.Build.VERSION.SDK_INT >= 31) {
-                flags |= 33554432; // FLAG_MUTABLE
-            }
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(context, sessionId, intent, flags);
-            IntentSender intentSender = pendingIntent.getIntentSender();
-
-            data.writeInt(1); // intentSender not null
-            intentSender.writeToParcel(data, 0);
-            if (android.os.Build.VERSION.SDK_INT >= 28) {
-                data.writeInt(0); // forTransferred = false
-            }
-
-            int transactionCode = getSessionTransactionCode("commit");
-            session.transact(transactionCode, data, reply, 0);
-            reply.readException();
+            TransactionSpec.get(TransactionTable.Code.SESSION_COMMIT)
+                    .transact(session, resultSender(context, sessionId, intent));
         } catch (Exception e) {
             Logger.log(context, TAG, "commitSessionThroughBinder error: " + e.getMessage());
-        } finally {
-            data.recycle();
-            reply.recycle();
-        }
-    }
-
-    private static int getPackageInstallerTransactionCode(String methodName) {
-        try {
-            Class<?> stubClass = Class.forName("android.content.pm.IPackageInstaller$Stub");
-            String fieldName = "TRANSACTION_" + methodName;
-            java.lang.reflect.Field field = stubClass.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return field.getInt(null);
-        } catch (Exception e) {
-            // Fallback - these are approximate for Android 8.1+
-            switch (methodName) {
-                case "createSession": return 1;
-                case "openSession": return 3;
-                case "abandonSession": return 5;
-                default: return 0;
-            }
         }
     }
 
@@ -875,198 +836,91 @@ public class DpmHelper {
      * Commit a PackageInstaller session with Device Owner privileges.
      * In native mode, uses standard commit.
      * In Dhizuku mode, wraps the session binder for elevated privileges.
+     * The session is committed at most once: the standard commit is only
+     * used if the Dhizuku commit could not be sent at all.
      */
     public static void commitSession(Context context, PackageInstaller.Session session,
                                      int sessionId, Intent resultIntent) {
-        Mode mode = getActiveMode(context);
-
+        DpmAsync.checkNotMainThread("commitSession");
+        Span.startPending("install.commitToResult", sessionId);
+        Span span = Span.begin("session.commit");
         try {
-            if (mode == Mode.DHIZUKU) {
-                commitSessionDhizuku(context, session, sessionId, resultIntent);
-            } else {
-                // Native mode or no privileges - use standard commit
-                commitSessionStandard(context, session, sessionId, resultIntent);
+            Mode mode = getActiveMode(context);
+
+            if (mode == Mode.DHIZUKU && commitSessionDhizuku(context, session, sessionId, resultIntent)) {
+                return;
             }
-        } catch (Exception e) {
-            Logger.log(context, TAG, "commitSession error: " + e.getMessage());
-            // Fall back to standard commit
+            // Native mode, no privileges, or the Dhizuku commit never left this process
             commitSessionStandard(context, session, sessionId, resultIntent);
+        } finally {
+            span.end();
         }
     }
 
     private static void commitSessionStandard(Context context, PackageInstaller.Session session,
                                               int sessionId, Intent resultIntent) {
         try {
-            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-            // Add FLAG_MUTABLE for Android 12+
-            if (android.os.Build.VERSION.SDK_INT >= 31) {
-                flags |= 33554432; // FLAG_MUTABLE
-            }
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    context, sessionId, resultIntent, flags);
-            session.commit(pendingIntent.getIntentSender());
+            session.commit(resultSender(context, sessionId, resultIntent));
         } catch (Exception e) {
             Logger.log(context, TAG, "commitSessionStandard error: " + e.getMessage());
+            Span.cancelPending("install.commitToResult", sessionId);
         }
     }
 
-    private static void commitSessionDhizuku(Context context, PackageInstaller.Session session,
-                                             int sessionId, Intent resultIntent) {
+    /**
+     * Commit through the Dhizuku-wrapped session binder.
+     * Returns false only if the commit transaction was never sent.
+     */
+    private static boolean commitSessionDhizuku(Context context, PackageInstaller.Session session,
+                                                int sessionId, Intent resultIntent) {
+        TransactionSpec spec;
+        IBinder wrappedBinder;
+        IntentSender intentSender;
         try {
+            spec = TransactionSpec.get(TransactionTable.Code.SESSION_COMMIT);
+            TransactionTable.require(spec.code);
+
             // Get the session's underlying binder
             IBinder sessionBinder = getSessionBinder(session);
             if (sessionBinder == null) {
                 Logger.log(context, TAG, "Could not get session binder, falling back to standard");
-                commitSessionStandard(context, session, sessionId, resultIntent);
-                return;
+                return false;
             }
 
             // Wrap the binder through Dhizuku
-            IBinder wrappedBinder = Dhizuku.binderWrapper(sessionBinder);
-
-            // Create the IntentSender for the result
-            int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-            if (android.os.Build.VERSION.SDK_INT >= 31) {
-                flags |= 33554432; // FLAG_MUTABLE
-            }
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    context, sessionId, resultIntent, flags);
-            IntentSender intentSender = pendingIntent.getIntentSender();
-
-            // Call commit through the wrapped binder
-            // IPackageInstallerSession.commit(IntentSender statusReceiver, boolean forTransferred)
-            Parcel data = Parcel.obtain();
-            Parcel reply = Parcel.obtain();
-            try {
-                data.writeInterfaceToken("android.content.pm.IPackageInstallerSession");
-                // Write the IntentSender
-                data.writeInt(1); // intentSender is not null
-                intentSender.writeToParcel(data, 0);
-                // forTransferred = false (for API 28+, may not exist on 27)
-                if (android.os.Build.VERSION.SDK_INT >= 28) {
-                    data.writeInt(0); // false
-                }
-
-                // Transaction code for commit
-                int transactionCode = getSessionTransactionCode("commit");
-                wrappedBinder.transact(transactionCode, data, reply, 0);
-                reply.readException();
-            } finally {
-                data.recycle();
-                reply.recycle();
-            }
+            wrappedBinder = Dhizuku.binderWrapper(sessionBinder);
+            intentSender = resultSender(context, sessionId, resultIntent);
         } catch (Exception e) {
-            Logger.log(context, TAG, "commitSessionDhizuku error: " + e.getMessage());
-            // Fall back to standard commit
-            commitSessionStandard(context, session, sessionId, resultIntent);
+            Logger.log(context, TAG, "commitSessionDhizuku not sent, falling back to standard: " + e.getMessage());
+            return false;
         }
-    }
 
-    private static IBinder getSessionBinder(PackageInstaller.Session session) {
         try {
-            // PackageInstaller.Session has a mSession field of type IPackageInstallerSession
-            java.lang.reflect.Field sessionField = PackageInstaller.Session.class.getDeclaredField("mSession");
-            sessionField.setAccessible(true);
-            Object iSession = sessionField.get(session);
-            if (iSession == null) return null;
-
-            // Get the binder from the IPackageInstallerSession
-            java.lang.reflect.Method asBinderMethod = iSession.getClass().getMethod("asBinder");
-            return (IBinder) asBinderMethod.invoke(iSession);
+            // IPackageInstallerSession.commit(IntentSender statusReceiver, boolean forTransferred)
+            spec.transact(wrappedBinder, intentSender);
         } catch (Exception e) {
-            return null;
+            // Not retried: the session may already be committed
+            Logger.log(context, TAG, "commitSessionDhizuku error: " + e.getMessage());
         }
+        return true;
     }
 
-    private static int getSessionTransactionCode(String methodName) {
-        try {
-            Class<?> stubClass = Class.forName("android.content.pm.IPackageInstallerSession$Stub");
-            String fieldName = "TRANSACTION_" + methodName;
-            java.lang.reflect.Field field = stubClass.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return field.getInt(null);
-        } catch (Exception e) {
-            // Fallback for Android 8.1 (API 27)
-            // commit is typically the first method
-            if ("commit".equals(methodName)) {
-                return 1; // FIRST_CALL_TRANSACTION + 0
-            }
-            return 0;
+    private static IntentSender resultSender(Context context, int sessionId, Intent resultIntent) {
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        // Add FLAG_MUTABLE for Android 12+
+        if (android.os.Build.VERSION.SDK_INT >= 31) {
+            flags |= 33554432; // FLAG_MUTABLE
         }
+        return PendingIntent.getBroadcast(context, sessionId, resultIntent, flags).getIntentSender();
     }
 
-    // ======== Dhizuku UserService for Installation ========
-
-    private static IDhizukuInstallService installService = null;
-    private static final Object serviceLock = new Object();
-
-    public interface InstallServiceCallback {
-        void onServiceConnected(IDhizukuInstallService service);
-        void onServiceDisconnected();
-        void onBindingFailed(String error);
-    }
-
-    /**
-     * Bind to the Dhizuku install service.
-     * The service runs in Dhizuku's process with Device Owner privileges.
-     */
-    public static void bindInstallService(Context context, final InstallServiceCallback callback) {
-        if (getActiveMode(context) != Mode.DHIZUKU) {
-            callback.onBindingFailed("Not in Dhizuku mode");
-            return;
-        }
-
-        synchronized (serviceLock) {
-            if (installService != null) {
-                callback.onServiceConnected(installService);
-                return;
-            }
-        }
-
+    private static IBinder getSessionBinder(PackageInstaller.Session session) {
         try {
-            DhizukuUserServiceArgs args = new DhizukuUserServiceArgs(
-                    new ComponentName(context, DhizukuInstallService.class));
-
-            boolean bound = Dhizuku.bindUserService(args, new ServiceConnection() {
-                @Override
-                public void onServiceConnected(ComponentName name, IBinder service) {
-                    synchronized (serviceLock) {
-                        installService = IDhizukuInstallService.Stub.asInterface(service);
-                    }
-                    callback.onServiceConnected(installService);
-                }
-
-                @Override
-                public void onServiceDisconnected(ComponentName name) {
-                    synchronized (serviceLock) {
-                        installService = null;
-                    }
-                    callback.onServiceDisconnected();
-                }
-            });
-
-            if (!bound) {
-                callback.onBindingFailed("Failed to bind to Dhizuku service");
-            }
+            // PackageInstaller.Session has a mSession field of type IPackageInstallerSession
+            android.os.IInterface iSession = HiddenApi.getSessionInterface(session);
+            return iSession != null ? iSession.asBinder() : null;
         } catch (Exception e) {
-            Logger.log(context, TAG, "bindInstallService error: " + e.getMessage());
-            callback.onBindingFailed(e.getMessage());
-        }
-    }
-
-    /**
-     * Get the cached install service, or null if not connected.
-     */
-    public static IDhizukuInstallService getInstallService() {
-        synchronized (serviceLock) {
-            return installService;
+            return null;
         }
     }
-
-    /**
-     * Check if we should use Dhizuku UserService for installation.
-     */
-    public static boolean shouldUseDhizukuInstaller(Context context) {
-        return getActiveMode(context) == Mode.DHIZUKU;
-    }
 }
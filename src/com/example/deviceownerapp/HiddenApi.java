@@ -0,0 +1,283 @@
+package com.example.deviceownerapp;
+
+import android.content.pm.PackageInstaller;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Parcelable;
+import android.util.Log;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry of the hidden Android members used by the Dhizuku paths.
+ *
+ * Every method, constructor and field is looked up once when this class is
+ * loaded and kept as an accessible reflective handle. Call sites invoke the
+ * cached handle instead of repeating Class.forName/getMethod/setAccessible,
+ * and a missing member fails with its name instead of an anonymous
+ * NullPointerException. report() lists what is available on this device.
+ */
+public class HiddenApi {
+
+    private static final String TAG = "HiddenApi";
+
+    private static final String PM = "android.content.pm.IPackageManager";
+    private static final String INSTALLER = "android.content.pm.IPackageInstaller";
+    private static final String SESSION = "android.content.pm.IPackageInstallerSession";
+    private static final String REMOTE_CALLBACK = "android.os.RemoteCallback";
+
+    // Filled while the members below are resolved, so they must come first
+    private static final List<String> available = new ArrayList<>();
+    private static final List<String> missing = new ArrayList<>();
+    private static final Span resolveSpan = Span.begin("reflect.hiddenApi");
+
+    private static final Method getService =
+            method("android.os.ServiceManager", "getService", String.class);
+    private static final Method pmAsInterface =
+            method(PM + "$Stub", "asInterface", IBinder.class);
+    private static final Method pmGetPackageInstaller =
+            method(PM, "getPackageInstaller");
+    private static final Method installerAsInterface =
+            method(INSTALLER + "$Stub", "asInterface", IBinder.class);
+    // createSession(params, installerPackageName, installerAttributionTag, userId) on API 31+
+    private static final Method createSessionWithTag = optionalMethod(INSTALLER, "createSession",
+            PackageInstaller.SessionParams.class, String.class, String.class, int.class);
+    // createSession(params, installerPackageName, userId) before API 31
+    private static final Method createSessionLegacy = optionalMethod(INSTALLER, "createSession",
+            PackageInstaller.SessionParams.class, String.class, int.class);
+    private static final Method openSession =
+            method(INSTALLER, "openSession", int.class);
+    private static final Method sessionAsInterface =
+            method(SESSION + "$Stub", "asInterface", IBinder.class);
+    private static final Constructor<?> sessionConstructor =
+            constructor(PackageInstaller.Session.class, SESSION);
+    private static final Field sessionField =
+            field(PackageInstaller.Session.class, "mSession");
+    // RemoteCallback(OnResultListener), for DPM calls that report through a callback (API 29+)
+    private static final Constructor<?> remoteCallbackConstructor = Build.VERSION.SDK_INT >= 29
+            ? constructor(REMOTE_CALLBACK, REMOTE_CALLBACK + "$OnResultListener") : null;
+
+    static {
+        resolveSpan.end();
+        if (createSessionWithTag == null && createSessionLegacy == null) {
+            missing.add(INSTALLER + ".createSession: no known signature");
+        }
+        Log.d(TAG, report());
+    }
+
+    // ======== Capability report ========
+
+    /**
+     * Human readable list of resolved and missing members.
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder("Hidden API: ")
+                .append(available.size()).append(" available, ")
+                .append(missing.size()).append(" missing");
+        for (String name : missing) {
+            sb.append("\n  missing ").append(name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Throw if any member needed to install through a Dhizuku-wrapped
+     * PackageInstaller is unavailable on this device.
+     */
+    public static void requireDhizukuInstall() {
+        if (getService == null || pmAsInterface == null || pmGetPackageInstaller == null
+                || installerAsInterface == null || openSession == null || sessionAsInterface == null
+                || sessionConstructor == null
+                || (createSessionWithTag == null && createSessionLegacy == null)) {
+            throw new IllegalStateException("Dhizuku install not supported on this device. " + report());
+        }
+    }
+
+    // ======== Call sites ========
+
+    public static IBinder getService(String name) throws Exception {
+        return (IBinder) invoke(getService, "ServiceManager.getService", null, name);
+    }
+
+    public static Object asPackageManager(IBinder binder) throws Exception {
+        return invoke(pmAsInterface, "IPackageManager.Stub.asInterface", null, binder);
+    }
+
+    public static IInterface getPackageInstaller(Object iPackageManager) throws Exception {
+        return (IInterface) invoke(pmGetPackageInstaller, "IPackageManager.getPackageInstaller", iPackageManager);
+    }
+
+    public static Object asPackageInstaller(IBinder binder) throws Exception {
+        return invoke(installerAsInterface, "IPackageInstaller.Stub.asInterface", null, binder);
+    }
+
+    public static int createSession(Object iPackageInstaller, PackageInstaller.SessionParams params,
+                                    String installerPackageName, int userId) throws Exception {
+        if (createSessionWithTag != null) {
+            return (Integer) invoke(createSessionWithTag, "IPackageInstaller.createSession",
+                    iPackageInstaller, params, installerPackageName, null, userId);
+        }
+        return (Integer) invoke(createSessionLegacy, "IPackageInstaller.createSession",
+                iPackageInstaller, params, installerPackageName, userId);
+    }
+
+    public static IInterface openSession(Object iPackageInstaller, int sessionId) throws Exception {
+        return (IInterface) invoke(openSession, "IPackageInstaller.openSession", iPackageInstaller, sessionId);
+    }
+
+    public static Object asSession(IBinder binder) throws Exception {
+        return invoke(sessionAsInterface, "IPackageInstallerSession.Stub.asInterface", null, binder);
+    }
+
+    /**
+     * Wrap an IPackageInstallerSession in the public PackageInstaller.Session API.
+     */
+    public static PackageInstaller.Session newSession(Object iSession) throws Exception {
+        if (sessionConstructor == null) {
+            throw new UnsupportedOperationException("Hidden API unavailable: PackageInstaller.Session(IPackageInstallerSession)");
+        }
+        try {
+            return (PackageInstaller.Session) sessionConstructor.newInstance(iSession);
+        } catch (InvocationTargetException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * The IPackageInstallerSession behind a PackageInstaller.Session, or null.
+     */
+    public static IInterface getSessionInterface(PackageInstaller.Session session) throws Exception {
+        if (sessionField == null) {
+            throw new UnsupportedOperationException("Hidden API unavailable: PackageInstaller.Session.mSession");
+        }
+        return (IInterface) sessionField.get(session);
+    }
+
+    /**
+     * Receives the Bundle passed to RemoteCallback.sendResult(), on a binder thread.
+     */
+    public interface ResultListener {
+        void onResult(Bundle result);
+    }
+
+    /**
+     * A new android.os.RemoteCallback forwarding to listener, to be written
+     * into a transaction as a parcelable argument.
+     */
+    public static Parcelable newRemoteCallback(final ResultListener listener) throws Exception {
+        if (remoteCallbackConstructor == null) {
+            throw new UnsupportedOperationException("Hidden API unavailable: " + REMOTE_CALLBACK);
+        }
+        Class<?> listenerClass = remoteCallbackConstructor.getParameterTypes()[0];
+        Object proxy = Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class<?>[]{listenerClass},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object self, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "onResult":
+                                listener.onResult((Bundle) args[0]);
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(self);
+                            case "equals":
+                                return self == args[0];
+                            default:
+                                return "RemoteCallback listener";
+                        }
+                    }
+                });
+        try {
+            return (Parcelable) remoteCallbackConstructor.newInstance(proxy);
+        } catch (InvocationTargetException e) {
+            throw unwrap(e);
+        }
+    }
+
+    // ======== Resolution helpers ========
+
+    private static Object invoke(Method method, String name, Object target, Object... args) throws Exception {
+        if (method == null) {
+            throw new UnsupportedOperationException("Hidden API unavailable: " + name);
+        }
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static Exception unwrap(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return e;
+    }
+
+    private static Method method(String className, String name, Class<?>... parameterTypes) {
+        return lookupMethod(className, name, true, parameterTypes);
+    }
+
+    private static Method optionalMethod(String className, String name, Class<?>... parameterTypes) {
+        return lookupMethod(className, name, false, parameterTypes);
+    }
+
+    private static Method lookupMethod(String className, String name, boolean required, Class<?>... parameterTypes) {
+        String label = className + "." + name;
+        try {
+            Method method = Class.forName(className).getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            available.add(label);
+            return method;
+        } catch (Throwable e) {
+            if (required) {
+                missing.add(label + ": " + e);
+            }
+            return null;
+        }
+    }
+
+    private static Constructor<?> constructor(Class<?> owner, String parameterClassName) {
+        String label = owner.getName() + "(" + parameterClassName + ")";
+        try {
+            Constructor<?> constructor = owner.getDeclaredConstructor(Class.forName(parameterClassName));
+            constructor.setAccessible(true);
+            available.add(label);
+            return constructor;
+        } catch (Throwable e) {
+            missing.add(label + ": " + e);
+            return null;
+        }
+    }
+
+    private static Constructor<?> constructor(String ownerClassName, String parameterClassName) {
+        try {
+            return constructor(Class.forName(ownerClassName), parameterClassName);
+        } catch (Throwable e) {
+            missing.add(ownerClassName + ": " + e);
+            return null;
+        }
+    }
+
+    private static Field field(Class<?> owner, String name) {
+        String label = owner.getName() + "." + name;
+        try {
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            available.add(label);
+            return field;
+        } catch (Throwable e) {
+            missing.add(label + ": " + e);
+            return null;
+        }
+    }
+}
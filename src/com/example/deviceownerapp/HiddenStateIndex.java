@@ -0,0 +1,90 @@
+package com.example.deviceownerapp;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Hidden state of a fixed list of packages, one bit per list position.
+ * Filled in bulk by DpmHelper.queryHiddenStates and kept up to date by
+ * DpmHelper.setApplicationHidden, so list rows can read it without IPC.
+ */
+public class HiddenStateIndex {
+
+    private final String[] packages;
+    private final HashMap<String, Integer> positions;
+    private final BitSet hidden;
+    // Positions written by setHidden(String) since construction; fill() leaves them alone
+    private final BitSet changed;
+
+    public HiddenStateIndex(Collection<String> packageNames) {
+        packages = packageNames.toArray(new String[0]);
+        positions = new HashMap<>(packages.length * 2);
+        for (int i = 0; i < packages.length; i++) {
+            positions.put(packages[i], i);
+        }
+        hidden = new BitSet(packages.length);
+        changed = new BitSet(packages.length);
+    }
+
+    public int size() {
+        return packages.length;
+    }
+
+    public String getPackage(int position) {
+        return packages[position];
+    }
+
+    public synchronized boolean isHidden(int position) {
+        return hidden.get(position);
+    }
+
+    public synchronized void setHidden(int position, boolean isHidden) {
+        hidden.set(position, isHidden);
+    }
+
+    /**
+     * Store a bit read by the bulk query, unless setHidden(String) already
+     * wrote a newer one for that package while the query was running.
+     */
+    public synchronized void fill(int position, boolean isHidden) {
+        if (!changed.get(position)) {
+            hidden.set(position, isHidden);
+        }
+    }
+
+    /**
+     * The bit for a package, or false if it isn't in this index.
+     */
+    public synchronized boolean isHidden(String packageName) {
+        Integer position = positions.get(packageName);
+        return position != null && hidden.get(position);
+    }
+
+    /**
+     * Update the bit for a package. Ignored if the package isn't in this index.
+     */
+    public synchronized void setHidden(String packageName, boolean isHidden) {
+        Integer position = positions.get(packageName);
+        if (position != null) {
+            hidden.set(position, isHidden);
+            changed.set(position);
+        }
+    }
+
+    /**
+     * True if this index was built for exactly these packages in this order.
+     */
+    public boolean matches(Collection<String> packageNames) {
+        if (packageNames.size() != packages.length) {
+            return false;
+        }
+        int i = 0;
+        for (String name : packageNames) {
+            if (!packages[i++].equals(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
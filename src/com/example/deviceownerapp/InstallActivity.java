@@ -1,57 +1,80 @@
 package com.example.deviceownerapp;
 
+import android.Manifest;
 import android.app.Activity;
-import android.app.PendingIntent;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageInstaller;
-import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.nio.channels.FileChannel;
+import java.util.function.Consumer;
 
 public class InstallActivity extends Activity {
 
     private static final String TAG = "InstallActivity";
 
+    private static final int REQUEST_STORAGE = 1;
+
+    private Uri pendingUri;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         Intent intent = getIntent();
-        final Uri data = intent.getData();
+        Uri data = intent.getData();
 
         if (data != null && (Intent.ACTION_VIEW.equals(intent.getAction()) || Intent.ACTION_SEND.equals(intent.getAction()))) {
-            Intent progressIntent = new Intent(this, ProgressActivity.class);
-            progressIntent.putExtra(ProgressActivity.EXTRA_MESSAGE, "Installing...");
-            progressIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            startActivity(progressIntent);
-
-            // Check mode and route to appropriate install method
-            DpmHelper.Mode mode = DpmHelper.getActiveMode(this);
-            if (mode == DpmHelper.Mode.DHIZUKU) {
-                // Use full Dhizuku binder wrapping for silent install
-                new DhizukuBinderInstallTask(data).execute();
-            } else {
-                // Use native install (shows UI if not Device Owner)
-                new NativeInstallTask(data).execute();
+            // Bundles may carry OBBs, which need storage access up to API 29.
+            // Install either way; without it the OBBs are skipped.
+            if (!ObbDeployer.hasStorageAccess(this)) {
+                pendingUri = data;
+                requestPermissions(new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE}, REQUEST_STORAGE);
+                return;
             }
+            startInstall(data);
         } else {
             finish();
         }
     }
 
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        if (requestCode == REQUEST_STORAGE && pendingUri != null) {
+            Uri data = pendingUri;
+            pendingUri = null;
+            startInstall(data);
+        }
+    }
+
+    private void startInstall(final Uri data) {
+        Intent progressIntent = new Intent(this, ProgressActivity.class);
+        progressIntent.putExtra(ProgressActivity.EXTRA_MESSAGE, "Installing...");
+        progressIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivity(progressIntent);
+
+        // Check mode and route to appropriate install method
+        DpmAsync.getActiveMode(this).thenAccept(new Consumer<DpmHelper.Mode>() {
+            @Override
+            public void accept(DpmHelper.Mode mode) {
+                if (mode == DpmHelper.Mode.DHIZUKU) {
+                    // Use full Dhizuku binder wrapping for silent install
+                    new DhizukuBinderInstallTask(data).execute();
+                } else {
+                    // Use native install (shows UI if not Device Owner)
+                    new NativeInstallTask(data).execute();
+                }
+            }
+        });
+    }
+
     // ======== Dhizuku Binder Installation ========
 
     /**
@@ -60,7 +83,6 @@ public class InstallActivity extends Activity {
      */
     private class DhizukuBinderInstallTask extends AsyncTask<Void, String, String> {
         private Uri uri;
-        private File tempFile = null;
 
         DhizukuBinderInstallTask(Uri uri) {
             this.uri = uri;
@@ -68,21 +90,26 @@ public class InstallActivity extends Activity {
 
         @Override
         protected String doInBackground(Void... voids) {
+            // Session setup runs while the file is being opened and classified
+            SpeculativeSession pending = SpeculativeSession.startDhizuku(InstallActivity.this);
+            OpenedFile file = null;
             try {
-                String type = getContentResolver().getType(uri);
-                if (uri.toString().toLowerCase().endsWith(".xapk") ||
-                    uri.toString().toLowerCase().endsWith(".zip") ||
-                    "application/zip".equals(type) ||
-                    "application/octet-stream".equals(type)) {
-                    return installXapkDhizukuBinder(uri);
-                } else {
-                    return installSingleApkDhizukuBinder(uri);
+                file = OpenedFile.open(InstallActivity.this, uri);
+                switch (file.kind) {
+                    case APK:
+                        return installSingleApkDhizukuBinder(pending, file);
+                    case BUNDLE:
+                        return installXapkDhizukuBinder(pending, file);
+                    default:
+                        pending.abandon();
+                        return "Unsupported file: not an APK or a split APK bundle";
                 }
             } catch (Exception e) {
+                pending.abandon();
                 return "Error: " + e.getMessage();
             } finally {
-                if (tempFile != null && tempFile.exists()) {
-                    tempFile.delete();
+                if (file != null) {
+                    file.close();
                 }
             }
         }
@@ -98,239 +125,71 @@ public class InstallActivity extends Activity {
             finish();
         }
 
-        private String installSingleApkDhizukuBinder(Uri uri) {
-            try (InputStream in = getContentResolver().openInputStream(uri)) {
-                DpmHelper.DhizukuInstallResult result = DpmHelper.installApkThroughDhizuku(
-                        InstallActivity.this, in, "base.apk");
-                if (!result.success) {
-                    return "Dhizuku APK install failed: " + result.error;
-                }
-                return null;
-            } catch (Exception e) {
-                return "Dhizuku APK install failed: " + e.getMessage();
-            }
-        }
-
-        private String installXapkDhizukuBinder(Uri uri) {
-            ZipFile zipFile = null;
+        private String installSingleApkDhizukuBinder(SpeculativeSession pending, OpenedFile file) {
             try {
-                // Copy to temp file for ZipFile
-                tempFile = File.createTempFile("install", ".xapk", getCacheDir());
-                try (InputStream in = getContentResolver().openInputStream(uri);
-                     FileOutputStream out = new FileOutputStream(tempFile)) {
-                    byte[] buffer = new byte[65536];
-                    int read;
-                    while ((read = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, read);
-                    }
-                }
-
-                zipFile = new ZipFile(tempFile);
-
-                // TODO: For XAPK with multiple APKs, we need to install them all in one session
-                // For now, find and install only the base APK
-                Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                ZipEntry baseApk = null;
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = entries.nextElement();
-                    String entryName = entry.getName().toLowerCase();
-                    if (!entry.isDirectory() && entryName.endsWith(".apk")) {
-                        if (entryName.contains("base") || baseApk == null) {
-                            baseApk = entry;
-                            if (entryName.contains("base")) break;
-                        }
-                    }
-                }
-
-                if (baseApk == null) {
-                    return "No APK files found in XAPK";
-                }
-
-                try (InputStream in = zipFile.getInputStream(baseApk)) {
-                    DpmHelper.DhizukuInstallResult result = DpmHelper.installApkThroughDhizuku(
-                            InstallActivity.this, in, "base.apk");
-                    if (!result.success) {
-                        return "Dhizuku XAPK install failed: " + result.error;
-                    }
-                    return null;
-                }
-
-            } catch (Exception e) {
-                return "Dhizuku XAPK install failed: " + e.getMessage();
-            } finally {
-                if (zipFile != null) {
-                    try { zipFile.close(); } catch (IOException ignored) {}
-                }
-            }
-        }
-    }
-
-    // ======== Dhizuku UserService Installation (deprecated - not working) ========
-
-    private void startDhizukuInstall(final Uri uri) {
-        DpmHelper.bindInstallService(this, new DpmHelper.InstallServiceCallback() {
-            @Override
-            public void onServiceConnected(IDhizukuInstallService service) {
-                new DhizukuInstallTask(uri, service).execute();
-            }
-
-            @Override
-            public void onServiceDisconnected() {
-                showError("Dhizuku service disconnected");
-                finish();
-            }
-
-            @Override
-            public void onBindingFailed(String error) {
-                // Fall back to native install
-                Logger.log(InstallActivity.this, TAG, "Dhizuku binding failed, using native: " + error);
-                new NativeInstallTask(uri).execute();
-            }
-        });
-    }
-
-    private class DhizukuInstallTask extends AsyncTask<Void, String, String> {
-        private Uri uri;
-        private IDhizukuInstallService service;
-        private File tempFile = null;
-        private int sessionId = -1;
-
-        DhizukuInstallTask(Uri uri, IDhizukuInstallService service) {
-            this.uri = uri;
-            this.service = service;
-        }
-
-        @Override
-        protected String doInBackground(Void... voids) {
-            try {
-                String type = getContentResolver().getType(uri);
-                if (uri.toString().toLowerCase().endsWith(".xapk") ||
-                    uri.toString().toLowerCase().endsWith(".zip") ||
-                    "application/zip".equals(type) ||
-                    "application/octet-stream".equals(type)) {
-                    return installXapkDhizuku(uri);
-                } else {
-                    return installSingleApkDhizuku(uri);
-                }
-            } catch (Exception e) {
-                return "Error: " + e.getMessage();
-            } finally {
-                if (tempFile != null && tempFile.exists()) {
-                    tempFile.delete();
-                }
-            }
-        }
-
-        @Override
-        protected void onPostExecute(String result) {
-            if (result != null) {
-                showError(result);
-            }
-            finish();
-        }
-
-        private String installSingleApkDhizuku(Uri uri) {
-            try {
-                // Copy to temp file for ParcelFileDescriptor
-                tempFile = File.createTempFile("install", ".apk", getCacheDir());
-                try (InputStream in = getContentResolver().openInputStream(uri);
-                     FileOutputStream out = new FileOutputStream(tempFile)) {
-                    byte[] buffer = new byte[65536];
-                    int read;
-                    while ((read = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, read);
-                    }
-                }
-
-                // Create session through Dhizuku
-                sessionId = service.createInstallSession();
-
-                // Write APK through Dhizuku
-                ParcelFileDescriptor pfd = ParcelFileDescriptor.open(tempFile,
-                        ParcelFileDescriptor.MODE_READ_ONLY);
-                service.writeToSession(sessionId, "base.apk", pfd);
-
-                // Commit through Dhizuku
-                service.commitSession(sessionId);
+                PackageInstaller.Session session = writeSingleApk(pending, file, "base.apk");
+                DpmHelper.commitDhizukuSession(InstallActivity.this, session, pending.getSessionId());
                 return null;
-
             } catch (Exception e) {
-                if (sessionId >= 0) {
-                    try { service.abandonSession(sessionId); } catch (Exception ignored) {}
-                }
+                pending.abandon();
                 return "Dhizuku APK install failed: " + e.getMessage();
             }
         }
 
-        private String installXapkDhizuku(Uri uri) {
-            ZipFile zipFile = null;
-            List<File> apkFiles = new ArrayList<>();
+        private String installXapkDhizukuBinder(SpeculativeSession pending, OpenedFile file) {
+            // All base/config/feature splits go into one Dhizuku-owned session
+            ArchiveSource source = file.source;
+            ObbDeployer obbs = null;
+            InstallDigests digests = null;
             try {
-                // Copy to temp file for ZipFile
-                tempFile = File.createTempFile("install", ".xapk", getCacheDir());
-                try (InputStream in = getContentResolver().openInputStream(uri);
-                     FileOutputStream out = new FileOutputStream(tempFile)) {
-                    byte[] buffer = new byte[65536];
-                    int read;
-                    while ((read = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, read);
-                    }
+                // Regular files are read in place, pipes streamed
+                ZipArchive zip = source != null ? ZipArchive.open(source.getChannel()) : null;
+                // Reject mismatched splits before writing any bytes, and
+                // leave out config splits this device can't use
+                SplitBundle bundle = zip != null
+                        ? SplitFilter.forDevice(InstallActivity.this).select(SplitBundle.read(zip)) : null;
+                if (bundle != null) {
+                    ApkSigningBlock.checkBundle(InstallActivity.this, zip, bundle);
                 }
-
-                zipFile = new ZipFile(tempFile);
-
-                // Extract APKs to temp files
-                Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = entries.nextElement();
-                    String entryName = entry.getName();
-                    if (!entry.isDirectory() && entryName.toLowerCase().endsWith(".apk")) {
-                        File apkFile = File.createTempFile("split", ".apk", getCacheDir());
-                        try (InputStream in = zipFile.getInputStream(entry);
-                             FileOutputStream out = new FileOutputStream(apkFile)) {
-                            byte[] buffer = new byte[65536];
-                            int read;
-                            while ((read = in.read(buffer)) != -1) {
-                                out.write(buffer, 0, read);
-                            }
-                        }
-                        apkFiles.add(apkFile);
-                    }
+                // OBB expansion files are copied alongside the session writes
+                obbs = zip != null ? ObbDeployer.start(InstallActivity.this, zip, bundle.packageName) : null;
+
+                PackageInstaller.Session session = pending.getSession();
+                // SHA-256 per split, hashed during the write or recalled from
+                // an earlier install of the same file
+                digests = zip != null
+                        ? InstallDigests.load(InstallActivity.this, source.getIdentity()) : null;
+                byte[] buffer = new byte[65536];
+                int count;
+                if (zip != null) {
+                    count = SessionWriter.writeSplits(session, zip, bundle, buffer, digests);
+                } else {
+                    count = ZipStreamWriter.writeApkEntries(session, file.stream, buffer);
                 }
-
-                if (apkFiles.isEmpty()) {
+                if (count == 0) {
                     throw new Exception("No .apk files found inside the XAPK/ZIP.");
                 }
-
-                // Create session through Dhizuku
-                sessionId = service.createInstallSession();
-
-                // Write each APK through Dhizuku
-                for (int i = 0; i < apkFiles.size(); i++) {
-                    File apkFile = apkFiles.get(i);
-                    ParcelFileDescriptor pfd = ParcelFileDescriptor.open(apkFile,
-                            ParcelFileDescriptor.MODE_READ_ONLY);
-                    String name = (i == 0) ? "base.apk" : "split_" + i + ".apk";
-                    service.writeToSession(sessionId, name, pfd);
+                if (obbs != null) {
+                    obbs.await();
+                    obbs.publishOnSuccess(pending.getSessionId());
+                }
+                if (digests != null) {
+                    digests.attachTo(session);
+                    digests.saveOnSuccess(pending.getSessionId());
                 }
 
-                // Commit through Dhizuku
-                service.commitSession(sessionId);
+                DpmHelper.commitDhizukuSession(InstallActivity.this, session, pending.getSessionId());
                 return null;
 
             } catch (Exception e) {
-                if (sessionId >= 0) {
-                    try { service.abandonSession(sessionId); } catch (Exception ignored) {}
-                }
-                return "Dhizuku XAPK install failed: " + e.getMessage();
-            } finally {
-                if (zipFile != null) {
-                    try { zipFile.close(); } catch (IOException ignored) {}
+                if (obbs != null) {
+                    obbs.cancel();
                 }
-                // Cleanup temp APK files
-                for (File f : apkFiles) {
-                    f.delete();
+                if (digests != null) {
+                    digests.cancel();
                 }
+                pending.abandon();
+                return "Dhizuku XAPK install failed: " + e.getMessage();
             }
         }
     }
@@ -339,8 +198,6 @@ public class InstallActivity extends Activity {
 
     private class NativeInstallTask extends AsyncTask<Void, String, String> {
         private Uri uri;
-        private PackageInstaller.Session session = null;
-        private File tempFile = null;
 
         NativeInstallTask(Uri uri) {
             this.uri = uri;
@@ -348,21 +205,26 @@ public class InstallActivity extends Activity {
 
         @Override
         protected String doInBackground(Void... voids) {
+            // Session setup runs while the file is being opened and classified
+            SpeculativeSession pending = SpeculativeSession.startNative(InstallActivity.this);
+            OpenedFile file = null;
             try {
-                String type = getContentResolver().getType(uri);
-                if (uri.toString().toLowerCase().endsWith(".xapk") ||
-                    uri.toString().toLowerCase().endsWith(".zip") ||
-                    "application/zip".equals(type) ||
-                    "application/octet-stream".equals(type)) {
-                    return installXapk(uri);
-                } else {
-                    return installSingleApk(uri);
+                file = OpenedFile.open(InstallActivity.this, uri);
+                switch (file.kind) {
+                    case APK:
+                        return installSingleApk(pending, file);
+                    case BUNDLE:
+                        return installXapk(pending, file);
+                    default:
+                        pending.abandon();
+                        return "Unsupported file: not an APK or a split APK bundle";
                 }
             } catch (Exception e) {
+                pending.abandon();
                 return "Error: " + e.getMessage();
             } finally {
-                if (tempFile != null && tempFile.exists()) {
-                    tempFile.delete();
+                if (file != null) {
+                    file.close();
                 }
             }
         }
@@ -375,93 +237,80 @@ public class InstallActivity extends Activity {
             finish();
         }
 
-        private String installSingleApk(Uri uri) {
-            try (InputStream in = getContentResolver().openInputStream(uri)) {
-                PackageManager pm = getPackageManager();
-                PackageInstaller installer = pm.getPackageInstaller();
-                PackageInstaller.SessionParams params = new PackageInstaller.SessionParams(
-                        PackageInstaller.SessionParams.MODE_FULL_INSTALL);
-
-                int sessionId = installer.createSession(params);
-                session = installer.openSession(sessionId);
-
-                try (OutputStream out = session.openWrite("package", 0, -1)) {
-                    byte[] buffer = new byte[65536];
-                    int c;
-                    while ((c = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, c);
-                    }
-                    session.fsync(out);
-                }
+        private String installSingleApk(SpeculativeSession pending, OpenedFile file) {
+            try {
+                PackageInstaller.Session session = writeSingleApk(pending, file, "package");
 
-                commitSession(session, sessionId);
+                commitSession(session, pending.getSessionId());
                 return null;
 
             } catch (Exception e) {
-                if (session != null) session.abandon();
+                pending.abandon();
                 return "Single APK install failed: " + e.getMessage();
             }
         }
 
-        private String installXapk(Uri uri) {
-            ZipFile zipFile = null;
+        private String installXapk(SpeculativeSession pending, OpenedFile file) {
+            // Regular files are read in place, pipes streamed
+            ArchiveSource source = file.source;
+            if (source == null) {
+                return installXapkStreaming(pending, file.stream);
+            }
+            ObbDeployer obbs = null;
+            InstallDigests digests = null;
             try {
-                tempFile = File.createTempFile("install", ".xapk", getCacheDir());
-                try (InputStream in = getContentResolver().openInputStream(uri);
-                     FileOutputStream out = new FileOutputStream(tempFile)) {
-                    byte[] buffer = new byte[65536];
-                    int read;
-                    while ((read = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, read);
-                    }
+                ZipArchive zip = ZipArchive.open(source.getChannel());
+                // Reject mismatched splits before writing any bytes, and
+                // leave out config splits this device can't use
+                SplitBundle bundle = SplitFilter.forDevice(InstallActivity.this).select(SplitBundle.read(zip));
+                ApkSigningBlock.checkBundle(InstallActivity.this, zip, bundle);
+                // OBB expansion files are copied alongside the session writes
+                obbs = ObbDeployer.start(InstallActivity.this, zip, bundle.packageName);
+
+                PackageInstaller.Session session = pending.getSession();
+                // SHA-256 per split, hashed during the write or recalled from
+                // an earlier install of the same file
+                digests = InstallDigests.load(InstallActivity.this, source.getIdentity());
+                SessionWriter.writeSplits(session, zip, bundle, new byte[65536], digests);
+                if (obbs != null) {
+                    obbs.await();
+                    obbs.publishOnSuccess(pending.getSessionId());
                 }
+                digests.attachTo(session);
+                digests.saveOnSuccess(pending.getSessionId());
 
-                zipFile = new ZipFile(tempFile);
-
-                PackageManager pm = getPackageManager();
-                PackageInstaller installer = pm.getPackageInstaller();
-                PackageInstaller.SessionParams params = new PackageInstaller.SessionParams(
-                        PackageInstaller.SessionParams.MODE_FULL_INSTALL);
-
-                int sessionId = installer.createSession(params);
-                session = installer.openSession(sessionId);
+                commitSession(session, pending.getSessionId());
+                return null;
 
-                byte[] buffer = new byte[65536];
-                boolean foundApk = false;
-
-                Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = entries.nextElement();
-                    String entryName = entry.getName();
-                    if (!entry.isDirectory() && entryName.toLowerCase().endsWith(".apk")) {
-                        foundApk = true;
-                        String sessionName = new File(entryName).getName();
-
-                        try (InputStream in = zipFile.getInputStream(entry);
-                             OutputStream out = session.openWrite(sessionName, 0, entry.getSize())) {
-                            int bytesRead;
-                            while ((bytesRead = in.read(buffer)) != -1) {
-                                out.write(buffer, 0, bytesRead);
-                            }
-                            session.fsync(out);
-                        }
-                    }
+            } catch (Exception e) {
+                if (obbs != null) {
+                    obbs.cancel();
+                }
+                if (digests != null) {
+                    digests.cancel();
                 }
+                pending.abandon();
+                return "XAPK install failed: " + e.getMessage();
+            }
+        }
 
-                if (!foundApk) {
+        /**
+         * One pass over a non-seekable archive: each .apk entry goes into the
+         * session as soon as its local header is read.
+         */
+        private String installXapkStreaming(SpeculativeSession pending, InputStream in) {
+            try {
+                PackageInstaller.Session session = pending.getSession();
+                if (ZipStreamWriter.writeApkEntries(session, in, new byte[65536]) == 0) {
                     throw new Exception("No .apk files found inside the XAPK/ZIP.");
                 }
 
-                commitSession(session, sessionId);
+                commitSession(session, pending.getSessionId());
                 return null;
 
             } catch (Exception e) {
-                if (session != null) session.abandon();
+                pending.abandon();
                 return "XAPK install failed: " + e.getMessage();
-            } finally {
-                if (zipFile != null) {
-                    try { zipFile.close(); } catch (IOException ignored) {}
-                }
             }
         }
 
@@ -472,10 +321,86 @@ public class InstallActivity extends Activity {
         }
     }
 
+    /**
+     * Write a single APK into the pending session under name. A regular
+     * file is read in place, so its signer is checked against the installed
+     * app before any bytes move; a pipe is streamed unchecked.
+     */
+    private PackageInstaller.Session writeSingleApk(SpeculativeSession pending, OpenedFile file,
+                                                    String name) throws Exception {
+        PackageInstaller.Session session;
+        if (file.source != null) {
+            FileChannel channel = file.source.getChannel();
+            ApkSigningBlock.checkApk(this, ZipArchive.open(channel));
+            session = pending.getSession();
+            SessionWriter.writeRange(session, name, channel, 0, channel.size(), new byte[65536]);
+        } else {
+            session = pending.getSession();
+            SessionWriter.write(session, name, file.stream, -1, new byte[65536]);
+        }
+        return session;
+    }
+
     private void showError(String message) {
         Intent errorIntent = new Intent(this, ProgressActivity.class);
         errorIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         errorIntent.putExtra(ProgressActivity.EXTRA_ERROR, message);
         startActivity(errorIntent);
     }
+
+    // ======== Source File ========
+
+    /**
+     * The file behind the install URI, opened through a single descriptor.
+     * A regular file is read in place; anything else becomes one buffered
+     * stream that PackageFormat sniffs and rewinds, so a one-shot pipe is
+     * classified and installed from the same open.
+     */
+    private static class OpenedFile {
+        final ArchiveSource source; // Null for pipes
+        final InputStream stream;   // Null for regular files
+        final PackageFormat.Kind kind;
+
+        private OpenedFile(ArchiveSource source, InputStream stream, PackageFormat.Kind kind) {
+            this.source = source;
+            this.stream = stream;
+            this.kind = kind;
+        }
+
+        static OpenedFile open(Context context, Uri uri) throws IOException {
+            ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+            if (pfd == null) {
+                throw new IOException("Could not open " + uri);
+            }
+            ArchiveSource source = ArchiveSource.inPlace(uri, pfd);
+            if (source != null) {
+                try {
+                    return new OpenedFile(source, null, PackageFormat.detect(source));
+                } catch (IOException | RuntimeException e) {
+                    source.close();
+                    throw e;
+                }
+            }
+            InputStream stream = new BufferedInputStream(
+                    new ParcelFileDescriptor.AutoCloseInputStream(pfd), 65536);
+            try {
+                return new OpenedFile(null, stream, PackageFormat.detect(stream));
+            } catch (IOException | RuntimeException e) {
+                stream.close();
+                throw e;
+            }
+        }
+
+        void close() {
+            if (source != null) {
+                source.close();
+            }
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,248 @@
+package com.example.deviceownerapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInstaller;
+import android.util.Log;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SHA-256 of every APK written to one install session.
+ *
+ * The digests are computed by SessionWriter in the same pass that writes
+ * each split and attached to the session with setChecksums() on API 31+.
+ * Once the session installs, they are recorded under the source's identity
+ * (URI, device, inode, size, mtime). Installing the same unchanged file
+ * again loads the recorded digests instead of hashing, so those writes keep
+ * their zero-copy path. Sources without a real mtime and inode have no
+ * identity and are always hashed.
+ */
+public class InstallDigests {
+
+    private static final String TAG = "InstallDigests";
+
+    private static final String PREFS = "install_digests";
+    private static final int MAX_RECORDS = 64;
+
+    // PackageInstaller.Checksum.TYPE_WHOLE_SHA256
+    private static final int TYPE_WHOLE_SHA256 = 0x00000008;
+
+    /** Digests waiting for their session's result, by session id. */
+    private static final Map<Integer, InstallDigests> PENDING = new HashMap<>();
+
+    private final Context context;
+    private final String identity;
+    private final boolean recorded;
+    private final Map<String, byte[]> digests;
+
+    private InstallDigests(Context context, String identity, Map<String, byte[]> digests, boolean recorded) {
+        this.context = context.getApplicationContext();
+        this.identity = identity;
+        this.digests = Collections.synchronizedMap(digests);
+        this.recorded = recorded;
+    }
+
+    /**
+     * Digests recorded for this identity, or an empty set to fill in.
+     * identity may be null when the source can't be identified (pipes);
+     * nothing is recorded then.
+     */
+    public static InstallDigests load(Context context, String identity) {
+        Map<String, byte[]> digests = new LinkedHashMap<>();
+        if (identity != null) {
+            String record = prefs(context).getString(identity, null);
+            if (record != null && decode(record, digests)) {
+                Log.d(TAG, "Recognised " + identity + " (" + digests.size() + " digests)");
+                return new InstallDigests(context, identity, digests, true);
+            }
+            digests.clear();
+        }
+        return new InstallDigests(context, identity, digests, false);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * True if these digests came from an earlier install of the same file.
+     */
+    public boolean isRecorded() {
+        return recorded;
+    }
+
+    public boolean contains(String name) {
+        return digests.containsKey(name);
+    }
+
+    public void put(String name, byte[] sha256) {
+        digests.put(name, sha256);
+    }
+
+    public byte[] get(String name) {
+        return digests.get(name);
+    }
+
+    /**
+     * Attach every digest to session with setChecksums() (API 31+), so the
+     * system can verify the files it was given. Failures are only logged.
+     */
+    public void attachTo(PackageInstaller.Session session) {
+        if (android.os.Build.VERSION.SDK_INT < 31) {
+            return;
+        }
+        try {
+            Class<?> checksumClass = Class.forName("android.content.pm.Checksum");
+            Constructor<?> newChecksum = checksumClass.getConstructor(int.class, byte[].class);
+            Method setChecksums = PackageInstaller.Session.class.getMethod("setChecksums",
+                    String.class, List.class, byte[].class);
+            synchronized (digests) {
+                for (Map.Entry<String, byte[]> entry : digests.entrySet()) {
+                    List<Object> checksums = new ArrayList<>();
+                    checksums.add(newChecksum.newInstance(TYPE_WHOLE_SHA256, entry.getValue()));
+                    setChecksums.invoke(session, entry.getKey(), checksums, null);
+                }
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "setChecksums failed: " + e);
+        }
+    }
+
+    /**
+     * Record the digests once sessionId's result arrives in onInstallResult()
+     * and says it installed. Call before the commit.
+     */
+    public void saveOnSuccess(int sessionId) {
+        if (identity == null || recorded || digests.isEmpty()) {
+            return;
+        }
+        synchronized (PENDING) {
+            PENDING.put(sessionId, this);
+        }
+    }
+
+    /**
+     * Drop the pending record, for installs that fail before committing.
+     */
+    public void cancel() {
+        synchronized (PENDING) {
+            PENDING.values().remove(this);
+        }
+    }
+
+    /**
+     * Called by InstallResultReceiver with a session's final result. A
+     * failed install records nothing, so a bad file is hashed again.
+     */
+    public static void onInstallResult(int sessionId, boolean success) {
+        InstallDigests pending;
+        synchronized (PENDING) {
+            pending = PENDING.remove(sessionId);
+        }
+        if (pending != null && success) {
+            pending.save();
+        }
+    }
+
+    private void save() {
+        SharedPreferences prefs = prefs(context);
+        SharedPreferences.Editor editor = prefs.edit();
+        Map<String, ?> all = prefs.getAll();
+        if (all.size() >= MAX_RECORDS) {
+            // Drop the oldest record; each starts with its save time
+            String oldest = null;
+            long oldestTime = Long.MAX_VALUE;
+            for (Map.Entry<String, ?> entry : all.entrySet()) {
+                long time = parseTime(String.valueOf(entry.getValue()));
+                if (time < oldestTime) {
+                    oldestTime = time;
+                    oldest = entry.getKey();
+                }
+            }
+            if (oldest != null) {
+                editor.remove(oldest);
+            }
+        }
+        editor.putString(identity, encode(System.currentTimeMillis(), digests)).apply();
+        Log.d(TAG, "Recorded " + digests.size() + " digests for " + identity);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    // ======== Record format: time;name=hex;name=hex ========
+
+    private static String encode(long time, Map<String, byte[]> digests) {
+        StringBuilder sb = new StringBuilder().append(time);
+        synchronized (digests) {
+            for (Map.Entry<String, byte[]> entry : digests.entrySet()) {
+                sb.append(';').append(entry.getKey()).append('=').append(toHex(entry.getValue()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean decode(String record, Map<String, byte[]> out) {
+        String[] parts = record.split(";");
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].lastIndexOf('=');
+            if (eq <= 0) {
+                return false;
+            }
+            byte[] digest = fromHex(parts[i].substring(eq + 1));
+            if (digest == null || digest.length != 32) {
+                return false;
+            }
+            out.put(parts[i].substring(0, eq), digest);
+        }
+        return !out.isEmpty();
+    }
+
+    private static long parseTime(String record) {
+        int end = record.indexOf(';');
+        try {
+            return Long.parseLong(end < 0 ? record : record.substring(0, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int hi = Character.digit(hex.charAt(i * 2), 16);
+            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        return bytes;
+    }
+}
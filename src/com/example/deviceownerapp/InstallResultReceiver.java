@@ -15,6 +15,15 @@ public class InstallResultReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        Span span = Span.begin("install.resultCallback");
+        try {
+            handleResult(context, intent);
+        } finally {
+            span.end();
+        }
+    }
+
+    private void handleResult(Context context, Intent intent) {
         Bundle extras = intent.getExtras();
         if (extras == null) {
             Logger.log(context, TAG, "Install result intent had no extras.");
@@ -23,6 +32,15 @@ public class InstallResultReceiver extends BroadcastReceiver {
 
         int status = extras.getInt(PackageInstaller.EXTRA_STATUS);
         String message = extras.getString(PackageInstaller.EXTRA_STATUS_MESSAGE);
+        if (status != PackageInstaller.STATUS_PENDING_USER_ACTION) {
+            int sessionId = extras.getInt(PackageInstaller.EXTRA_SESSION_ID, -1);
+            // Time from our commit call to the final result
+            Span.finishPending("install.commitToResult", sessionId);
+            // OBBs copied for this session go into place only if it installed
+            ObbDeployer.onInstallResult(context, sessionId, status == PackageInstaller.STATUS_SUCCESS);
+            // Split digests are only remembered for files that installed
+            InstallDigests.onInstallResult(sessionId, status == PackageInstaller.STATUS_SUCCESS);
+        }
 
         if (status == PackageInstaller.STATUS_SUCCESS) {
             // Show success dialog via ProgressActivity
@@ -0,0 +1,103 @@
+package com.example.deviceownerapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process latency histograms, one per operation name, fed by Span.
+ *
+ * Each histogram uses power-of-two microsecond buckets, so recording is a
+ * few arithmetic operations and percentiles are accurate to within a factor
+ * of two, which is plenty to tell a 2 ms transact from a 200 ms one.
+ */
+public class LatencyStats {
+
+    private static final int BUCKETS = 32; // 1 us .. ~35 min
+
+    public static class Histogram {
+        private final String name;
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long sumNanos;
+        private long maxNanos;
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        synchronized void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+            buckets[bucket]++;
+            count++;
+            sumNanos += nanos;
+            if (nanos > maxNanos) maxNanos = nanos;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, in ms.
+         */
+        public synchronized double percentileMs(double percentile) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min((1L << (i + 1)) / 1000.0, maxNanos / 1e6);
+                }
+            }
+            return maxNanos / 1e6;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.US, "%s: n=%d avg=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f ms",
+                    name, count, count > 0 ? sumNanos / 1e6 / count : 0,
+                    percentileMs(50), percentileMs(90), percentileMs(99), maxNanos / 1e6);
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public static void record(String name, long nanos) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) histogram = created;
+        }
+        histogram.record(nanos);
+    }
+
+    public static Histogram get(String name) {
+        return histograms.get(name);
+    }
+
+    /**
+     * One line per operation, sorted by name.
+     */
+    public static String report() {
+        List<String> names = new ArrayList<>(histograms.keySet());
+        if (names.isEmpty()) {
+            return "No operations recorded yet.";
+        }
+        Collections.sort(names);
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            sb.append(histograms.get(name)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static void reset() {
+        histograms.clear();
+    }
+}
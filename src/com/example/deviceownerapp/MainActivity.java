@@ -11,10 +11,13 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.util.Log;
+import android.view.ActionMode;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.BaseAdapter;
 import android.widget.Button;
@@ -37,6 +40,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class MainActivity extends Activity {
 
@@ -57,6 +63,13 @@ public class MainActivity extends Activity {
     private PackageManager pm;
     private ComponentName adminComponent;
     private List<ApplicationInfo> appList;
+    private HiddenStateIndex hiddenStates;
+    /** True when hiddenStates was built for appList as it is, so rows can read bits by position. */
+    private boolean hiddenStatesAligned;
+    /** Bumped by each loadApplications so a slower, older load can't replace a newer one. */
+    private int appListGeneration;
+    private BulkPolicyExecutor bulkExecutor;
+    private AlertDialog bulkDialog;
     private AppAdapter appAdapter;
 
     @Override
@@ -95,6 +108,9 @@ public class MainActivity extends Activity {
             }
         });
 
+        // Long-press starts multi-select for bulk hide/unhide
+        setupMultiSelect();
+
         // Set click listener for the Uninstall button
         uninstallButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -120,6 +136,16 @@ public class MainActivity extends Activity {
                 }
             });
         }
+
+        // Finish OBB deployments whose install result never reached us
+        final Context app = getApplicationContext();
+        DpmAsync.call("sweepObbDeployments", new Callable<Void>() {
+            @Override
+            public Void call() {
+                ObbDeployer.sweep(app);
+                return null;
+            }
+        });
     }
 
     @Override
@@ -129,37 +155,65 @@ public class MainActivity extends Activity {
         loadApplications();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (bulkExecutor != null) {
+            bulkExecutor.cancel();
+        }
+        if (bulkDialog != null) {
+            bulkDialog.dismiss();
+            bulkDialog = null;
+        }
+    }
+
     private void setupDhizukuButton() {
         if (dhizukuButton == null) return;
 
         dhizukuButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (!DpmHelper.isDhizukuInstalled(MainActivity.this)) {
-                    Toast.makeText(MainActivity.this, R.string.dhizuku_not_available, Toast.LENGTH_SHORT).show();
-                    return;
-                }
-
-                DpmHelper.requestDhizukuPermission(MainActivity.this, new DpmHelper.PermissionCallback() {
+                DpmAsync.isDhizukuInstalled(MainActivity.this).thenAccept(new Consumer<Boolean>() {
                     @Override
-                    public void onResult(boolean granted) {
-                        if (granted) {
-                            Toast.makeText(MainActivity.this, R.string.dhizuku_permission_granted, Toast.LENGTH_SHORT).show();
+                    public void accept(Boolean installed) {
+                        if (installed) {
+                            requestDhizukuPermission();
                         } else {
-                            Toast.makeText(MainActivity.this, R.string.dhizuku_permission_denied, Toast.LENGTH_SHORT).show();
+                            Toast.makeText(MainActivity.this, R.string.dhizuku_not_available, Toast.LENGTH_SHORT).show();
                         }
-                        updateStatusDisplay();
-                        loadApplications();
                     }
                 });
             }
         });
     }
 
+    private void requestDhizukuPermission() {
+        DpmAsync.requestDhizukuPermission(this).thenAccept(new Consumer<Boolean>() {
+            @Override
+            public void accept(Boolean granted) {
+                if (granted) {
+                    Toast.makeText(MainActivity.this, R.string.dhizuku_permission_granted, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(MainActivity.this, R.string.dhizuku_permission_denied, Toast.LENGTH_SHORT).show();
+                }
+                updateStatusDisplay();
+                loadApplications();
+            }
+        });
+    }
+
     private void updateStatusDisplay() {
         if (statusText == null) return;
 
-        DpmHelper.Mode mode = DpmHelper.getActiveMode(this);
+        DpmAsync.getActiveMode(this).thenAccept(new Consumer<DpmHelper.Mode>() {
+            @Override
+            public void accept(DpmHelper.Mode mode) {
+                showStatus(mode);
+            }
+        });
+    }
+
+    private void showStatus(DpmHelper.Mode mode) {
         switch (mode) {
             case NATIVE_OWNER:
                 statusText.setText(R.string.status_native_owner);
@@ -174,6 +228,7 @@ public class MainActivity extends Activity {
                 if (dhizukuButton != null) {
                     dhizukuButton.setVisibility(View.GONE);
                 }
+                showMissingTransactions();
                 break;
             case NONE:
             default:
@@ -181,16 +236,45 @@ public class MainActivity extends Activity {
                 statusText.setTextColor(0xFFFF5722); // Orange
                 // Show Dhizuku button if Dhizuku is installed but not connected
                 if (dhizukuButton != null) {
-                    if (DpmHelper.isDhizukuInstalled(this)) {
-                        dhizukuButton.setVisibility(View.VISIBLE);
-                    } else {
-                        dhizukuButton.setVisibility(View.GONE);
-                    }
+                    DpmAsync.isDhizukuInstalled(this).thenAccept(new Consumer<Boolean>() {
+                        @Override
+                        public void accept(Boolean installed) {
+                            dhizukuButton.setVisibility(installed ? View.VISIBLE : View.GONE);
+                        }
+                    });
                 }
                 break;
         }
     }
 
+    /**
+     * Dhizuku calls go through raw binder transactions. Name the ones this
+     * release has no code for, so failures aren't a silent "false".
+     */
+    private void showMissingTransactions() {
+        final Context app = getApplicationContext();
+        DpmAsync.call("missingTransactions", new Callable<String>() {
+            @Override
+            public String call() {
+                String missing = TransactionTable.missing();
+                if (!missing.isEmpty()) {
+                    Logger.log(app, TAG, "No transaction codes on API "
+                            + android.os.Build.VERSION.SDK_INT + ": " + missing);
+                }
+                return missing;
+            }
+        }).thenAccept(new Consumer<String>() {
+            @Override
+            public void accept(String missing) {
+                if (missing.isEmpty() || isFinishing()) return;
+                statusText.setText(getString(R.string.status_missing_codes,
+                        getString(R.string.status_dhizuku_connected),
+                        android.os.Build.VERSION.SDK_INT, missing));
+                statusText.setTextColor(0xFFFF5722); // Orange
+            }
+        });
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
@@ -206,10 +290,32 @@ public class MainActivity extends Activity {
         } else if (id == R.id.action_contact) {
             showContactDialog();
             return true;
+        } else if (id == R.id.action_latency) {
+            showLatencyStats();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Per-operation timings collected by Span since launch or the last reset.
+     */
+    private void showLatencyStats() {
+        String report = LatencyStats.report();
+        Log.d(TAG, "Latency stats:\n" + report);
+        new AlertDialog.Builder(this)
+                .setTitle("Latency Stats (ms)")
+                .setMessage(report)
+                .setPositiveButton("OK", null)
+                .setNegativeButton("Reset", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        LatencyStats.reset();
+                    }
+                })
+                .show();
+    }
+
     private void checkForUpdates() {
         Toast.makeText(this, "Checking for updates...", Toast.LENGTH_SHORT).show();
         new CheckUpdateTask().execute(UPDATE_API_URL);
@@ -488,53 +594,262 @@ public class MainActivity extends Activity {
 
     @SuppressWarnings("deprecation")
     private void removeAdminAndUninstall() {
-        try {
-            DpmHelper.Mode mode = DpmHelper.getActiveMode(this);
+        Toast.makeText(this, "Removing admin...", Toast.LENGTH_SHORT).show();
+
+        // 1. Clear Device Owner status (only in native mode), 2. remove Active Admin status
+        DpmAsync.removeAdmin(this).whenComplete(new BiConsumer<DpmHelper.Mode, Throwable>() {
+            @Override
+            public void accept(DpmHelper.Mode mode, Throwable error) {
+                if (error != null) {
+                    Logger.log(MainActivity.this, TAG, "Error removing admin: " + error.getMessage());
+                    ErrorHandler.showError(MainActivity.this, "Error removing admin: " + error.getMessage());
+                    return;
+                }
 
-            // 1. Check if we are Device Owner and clear it (only in native mode)
-            if (mode == DpmHelper.Mode.NATIVE_OWNER) {
-                Toast.makeText(this, "Clearing Device Owner status...", Toast.LENGTH_SHORT).show();
-                DpmHelper.clearDeviceOwner(this);
+                // 3. Launch the system uninstall dialog
+                Uri packageUri = Uri.parse("package:" + getPackageName());
+                Intent uninstallIntent = new Intent(Intent.ACTION_DELETE, packageUri);
+                startActivity(uninstallIntent);
             }
+        });
+    }
 
-            // 2. Remove Active Admin status
-            Toast.makeText(this, "Removing Active Admin...", Toast.LENGTH_SHORT).show();
-            DpmHelper.removeActiveAdmin(this);
+    // ======== Multi-select bulk operations ========
 
-            // 3. Launch the system uninstall dialog
-            Uri packageUri = Uri.parse("package:" + getPackageName());
-            Intent uninstallIntent = new Intent(Intent.ACTION_DELETE, packageUri);
-            startActivity(uninstallIntent);
+    private void setupMultiSelect() {
+        appListView.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE_MODAL);
+        appListView.setMultiChoiceModeListener(new AbsListView.MultiChoiceModeListener() {
+            @Override
+            public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+                mode.getMenuInflater().inflate(R.menu.bulk_menu, menu);
+                return true;
+            }
 
-        } catch (Exception e) {
-            Logger.log(this, TAG, "Error removing admin: " + e.getMessage());
-            ErrorHandler.showError(this, "Error removing admin: " + e.getMessage());
+            @Override
+            public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+                return false;
+            }
+
+            @Override
+            public void onItemCheckedStateChanged(ActionMode mode, int position, long id, boolean checked) {
+                mode.setTitle(appListView.getCheckedItemCount() + " selected");
+            }
+
+            @Override
+            public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+                int id = item.getItemId();
+                if (id == R.id.action_bulk_hide) {
+                    confirmBulkHide(getCheckedPackages());
+                } else if (id == R.id.action_bulk_unhide) {
+                    runBulk(getCheckedPackages(), BulkPolicyExecutor.Operation.UNHIDE);
+                } else if (id == R.id.action_bulk_permission) {
+                    choosePermission(getCheckedPackages());
+                } else {
+                    return false;
+                }
+                mode.finish();
+                return true;
+            }
+
+            @Override
+            public void onDestroyActionMode(ActionMode mode) {
+            }
+        });
+    }
+
+    private List<String> getCheckedPackages() {
+        List<String> packages = new ArrayList<>();
+        android.util.SparseBooleanArray checked = appListView.getCheckedItemPositions();
+        for (int i = 0; i < checked.size(); i++) {
+            if (checked.valueAt(i) && checked.keyAt(i) < appList.size()) {
+                packages.add(appList.get(checked.keyAt(i)).packageName);
+            }
         }
+        return packages;
+    }
+
+    private void confirmBulkHide(final List<String> packages) {
+        new AlertDialog.Builder(this)
+            .setTitle("Warning")
+            .setMessage("Hide " + packages.size() + " apps? Hidden apps disappear from the launcher until unhidden.")
+            .setPositiveButton("Yes", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    runBulk(packages, BulkPolicyExecutor.Operation.HIDE);
+                }
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+
+    /**
+     * Ask for a permission name, then grant, deny or reset it to default
+     * for every selected app.
+     */
+    private void choosePermission(final List<String> packages) {
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.setPadding(32, 32, 32, 32);
+
+        final EditText permissionInput = new EditText(this);
+        permissionInput.setHint("android.permission.CAMERA");
+        layout.addView(permissionInput);
+
+        DialogInterface.OnClickListener onChoice = new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                String permission = permissionInput.getText().toString().trim();
+                if (permission.isEmpty()) {
+                    Toast.makeText(MainActivity.this, "Enter a permission name.", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                BulkPolicyExecutor.Operation operation;
+                if (which == DialogInterface.BUTTON_POSITIVE) {
+                    operation = BulkPolicyExecutor.Operation.GRANT_PERMISSION;
+                } else if (which == DialogInterface.BUTTON_NEGATIVE) {
+                    operation = BulkPolicyExecutor.Operation.DENY_PERMISSION;
+                } else {
+                    operation = BulkPolicyExecutor.Operation.DEFAULT_PERMISSION;
+                }
+                runBulk(packages, operation, permission);
+            }
+        };
+
+        new AlertDialog.Builder(this)
+            .setTitle("Permission for " + packages.size() + " apps")
+            .setView(layout)
+            .setPositiveButton("Grant", onChoice)
+            .setNegativeButton("Deny", onChoice)
+            .setNeutralButton("Default", onChoice)
+            .show();
+    }
+
+    private void runBulk(List<String> packages, BulkPolicyExecutor.Operation operation) {
+        runBulk(packages, operation, null);
+    }
+
+    private void runBulk(List<String> packages, BulkPolicyExecutor.Operation operation, String permission) {
+        if (packages.isEmpty() || bulkExecutor != null) return;
+
+        List<BulkPolicyExecutor.Item> items = new ArrayList<>(packages.size());
+        for (String packageName : packages) {
+            items.add(new BulkPolicyExecutor.Item(packageName, operation, permission));
+        }
+
+        final BulkPolicyExecutor executor = new BulkPolicyExecutor(this, BulkPolicyExecutor.defaultThreads());
+        bulkExecutor = executor;
+
+        final AlertDialog progressDialog = new AlertDialog.Builder(this)
+            .setTitle("Applying...")
+            .setMessage("0 / " + items.size())
+            .setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    executor.cancel();
+                }
+            })
+            .setCancelable(false)
+            .show();
+        bulkDialog = progressDialog;
+
+        executor.start(items, new BulkPolicyExecutor.Listener() {
+            @Override
+            public void onItemDone(BulkPolicyExecutor.Result result, int done, int total) {
+                progressDialog.setMessage(done + " / " + total);
+                if (!result.success && !result.cancelled) {
+                    Logger.log(MainActivity.this, TAG, "Bulk " + result.item.operation
+                            + " failed for " + result.item.packageName);
+                }
+            }
+
+            @Override
+            public void onFinished(BulkPolicyExecutor.Summary summary) {
+                bulkExecutor = null;
+                // Dismiss even when finishing, or the dialog's window leaks
+                progressDialog.dismiss();
+                if (bulkDialog == progressDialog) {
+                    bulkDialog = null;
+                }
+                if (isFinishing() || isDestroyed()) return;
+                // setApplicationHidden already updated the list's hidden bits
+                appAdapter.notifyDataSetChanged();
+                new AlertDialog.Builder(MainActivity.this)
+                    .setTitle("Done")
+                    .setMessage(summary.toString())
+                    .setPositiveButton("OK", null)
+                    .show();
+            }
+        });
     }
 
     private void loadApplications() {
-        DpmHelper.Mode mode = DpmHelper.getActiveMode(this);
-        if (mode == DpmHelper.Mode.NONE) {
-            // Update the button text if we aren't admin anymore
-            if (uninstallButton != null) {
-                 uninstallButton.setText("Uninstall App (Not Admin)");
+        DpmAsync.getActiveMode(this).thenAccept(new Consumer<DpmHelper.Mode>() {
+            @Override
+            public void accept(DpmHelper.Mode mode) {
+                if (uninstallButton == null) return;
+                if (mode == DpmHelper.Mode.NONE) {
+                    // Update the button text if we aren't admin anymore
+                    uninstallButton.setText("Uninstall App (Not Admin)");
+                } else {
+                    uninstallButton.setText("Uninstall App / Remove Admin");
+                }
             }
-        } else {
-            if (uninstallButton != null) {
-                 uninstallButton.setText("Uninstall App / Remove Admin");
+        });
+
+        // Get all apps, sorted by label, off the UI thread. Only the newest load is shown.
+        final int generation = ++appListGeneration;
+        DpmAsync.call("getInstalledApplications", new Callable<List<ApplicationInfo>>() {
+            @Override
+            public List<ApplicationInfo> call() {
+                List<ApplicationInfo> apps = pm.getInstalledApplications(PackageManager.MATCH_UNINSTALLED_PACKAGES);
+                Collections.sort(apps, new Comparator<ApplicationInfo>() {
+                    @Override
+                    public int compare(ApplicationInfo a1, ApplicationInfo a2) {
+                        try {
+                            return a1.loadLabel(pm).toString().compareToIgnoreCase(a2.loadLabel(pm).toString());
+                        } catch (Exception e) {
+                            return 0;
+                        }
+                    }
+                });
+                return apps;
             }
-        }
+        }).whenComplete(new BiConsumer<List<ApplicationInfo>, Throwable>() {
+            @Override
+            public void accept(List<ApplicationInfo> apps, Throwable error) {
+                if (error != null) {
+                    Logger.log(MainActivity.this, TAG, "Error loading apps: " + error.getMessage());
+                    return;
+                }
+                if (generation == appListGeneration && !isFinishing()) {
+                    showApplications(apps);
+                }
+            }
+        });
+    }
 
-        // Get all apps
-        appList = pm.getInstalledApplications(PackageManager.MATCH_UNINSTALLED_PACKAGES);
+    private void showApplications(List<ApplicationInfo> apps) {
+        appList = apps;
+
+        // Hidden states are fetched in one background pass so rows never do IPC.
+        // Apps may have been hidden elsewhere while we were paused, so always
+        // re-query, and show the last completed bits until the new ones arrive.
+        List<String> packageNames = new ArrayList<>(appList.size());
+        for (ApplicationInfo app : appList) {
+            packageNames.add(app.packageName);
+        }
+        HiddenStateIndex previous = DpmHelper.getHiddenStates();
+        hiddenStates = previous;
+        hiddenStatesAligned = previous != null && previous.matches(packageNames);
 
-        Collections.sort(appList, new Comparator<ApplicationInfo>() {
+        final List<ApplicationInfo> requestedList = appList;
+        DpmHelper.queryHiddenStates(this, packageNames, new DpmHelper.HiddenStatesCallback() {
             @Override
-            public int compare(ApplicationInfo a1, ApplicationInfo a2) {
-                try {
-                    return a1.loadLabel(pm).toString().compareToIgnoreCase(a2.loadLabel(pm).toString());
-                } catch (Exception e) {
-                    return 0;
+            public void onResult(HiddenStateIndex states) {
+                if (appList == requestedList) {
+                    hiddenStates = states;
+                    hiddenStatesAligned = true;
+                    appAdapter.notifyDataSetChanged();
                 }
             }
         });
@@ -554,7 +869,7 @@ public class MainActivity extends Activity {
         public View getView(int position, View convertView, ViewGroup parent) {
             ViewHolder holder;
             if (convertView == null) {
-                convertView = getLayoutInflater().inflate(android.R.layout.simple_list_item_1, parent, false);
+                convertView = getLayoutInflater().inflate(android.R.layout.simple_list_item_activated_1, parent, false);
                 holder = new ViewHolder();
                 holder.textView = (TextView) convertView;
                 convertView.setTag(holder);
@@ -564,7 +879,15 @@ public class MainActivity extends Activity {
 
             ApplicationInfo app = appList.get(position);
             String appName = app.loadLabel(pm).toString();
-            boolean isHidden = DpmHelper.isApplicationHidden(MainActivity.this, app.packageName);
+            // Until the first bulk query finishes every row shows as visible
+            boolean isHidden;
+            if (hiddenStates == null) {
+                isHidden = false;
+            } else if (hiddenStatesAligned) {
+                isHidden = hiddenStates.isHidden(position);
+            } else {
+                isHidden = hiddenStates.isHidden(app.packageName);
+            }
 
             String displayName = appName + (isHidden ? " (Hidden)" : "");
             holder.textView.setText(displayName);
@@ -0,0 +1,169 @@
+package com.example.deviceownerapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.rosan.dhizuku.api.Dhizuku;
+
+/**
+ * Caches the privilege mode returned by DpmHelper.getActiveMode.
+ *
+ * Resolving the mode costs an isDeviceOwnerApp binder call, a getPackageInfo
+ * lookup for Dhizuku and a Dhizuku permission check, so it is done once and
+ * kept until something that can change it actually happens: our admin being
+ * enabled or disabled, Dhizuku being installed or removed, a Dhizuku
+ * permission result, or the Dhizuku server binder dying.
+ */
+public class ModeResolver {
+
+    private static final String TAG = "ModeResolver";
+
+    private static final Object lock = new Object();
+    private static final Object resolveLock = new Object();
+
+    // Guarded by lock. null means "not resolved yet".
+    private static DpmHelper.Mode cachedMode = null;
+    // Guarded by lock. Bumped on every invalidation so a resolve that raced
+    // with an invalidation never publishes a stale mode.
+    private static int generation = 0;
+
+    private static boolean watchingPackages = false;
+    private static IBinder watchedDhizukuBinder = null;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get the cached mode, resolving it if nothing is cached.
+     * Concurrent callers on a cold cache wait for a single resolution.
+     */
+    public static DpmHelper.Mode get(Context context) {
+        synchronized (lock) {
+            if (cachedMode != null) {
+                hits.incrementAndGet();
+                return cachedMode;
+            }
+        }
+
+        synchronized (resolveLock) {
+            int startGeneration;
+            synchronized (lock) {
+                if (cachedMode != null) {
+                    hits.incrementAndGet();
+                    return cachedMode;
+                }
+                startGeneration = generation;
+            }
+
+            misses.incrementAndGet();
+            watchPackages(context);
+            DpmHelper.Mode mode = DpmHelper.resolveActiveMode(context);
+
+            synchronized (lock) {
+                if (generation == startGeneration) {
+                    cachedMode = mode;
+                }
+            }
+            if (mode == DpmHelper.Mode.DHIZUKU) {
+                watchDhizukuBinder();
+                DhizukuBinders.prewarm();
+            }
+            Log.d(TAG, "Resolved mode " + mode + " (hits=" + hits.get() + ", misses=" + misses.get() + ")");
+            return mode;
+        }
+    }
+
+    /**
+     * Drop the cached mode. The next get() resolves it again.
+     */
+    public static void invalidate(String reason) {
+        synchronized (lock) {
+            cachedMode = null;
+            generation++;
+        }
+        // Wrapped binders and bulk hidden states belong to the old mode
+        DhizukuBinders.invalidate(reason);
+        DpmHelper.dropHiddenStates();
+        Log.d(TAG, "Mode invalidated: " + reason);
+    }
+
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    // ======== Invalidation sources ========
+
+    /**
+     * Listen for Dhizuku being installed, updated or removed.
+     */
+    private static void watchPackages(Context context) {
+        synchronized (lock) {
+            if (watchingPackages) return;
+            watchingPackages = true;
+        }
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        try {
+            context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    Uri data = intent.getData();
+                    if (data != null && DpmHelper.DHIZUKU_PACKAGE.equals(data.getSchemeSpecificPart())) {
+                        DpmHelper.resetDhizukuInit();
+                        invalidate("Dhizuku package " + intent.getAction());
+                    }
+                }
+            }, filter);
+        } catch (Exception e) {
+            Logger.log(context, TAG, "Could not watch package changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Link to the Dhizuku server binder so its death drops the cached mode.
+     * The Dhizuku API keeps the binder private, so this is best effort.
+     */
+    private static void watchDhizukuBinder() {
+        try {
+            java.lang.reflect.Field remoteField = Dhizuku.class.getDeclaredField("remote");
+            remoteField.setAccessible(true);
+            IInterface remote = (IInterface) remoteField.get(null);
+            if (remote == null) return;
+
+            final IBinder binder = remote.asBinder();
+            synchronized (lock) {
+                if (binder == null || binder == watchedDhizukuBinder) return;
+                watchedDhizukuBinder = binder;
+            }
+            binder.linkToDeath(new IBinder.DeathRecipient() {
+                @Override
+                public void binderDied() {
+                    synchronized (lock) {
+                        if (watchedDhizukuBinder == binder) {
+                            watchedDhizukuBinder = null;
+                        }
+                    }
+                    DpmHelper.resetDhizukuInit();
+                    invalidate("Dhizuku binder died");
+                }
+            }, 0);
+        } catch (Exception e) {
+            Log.d(TAG, "Could not link to Dhizuku binder: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.example.deviceownerapp;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.StatFs;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies the OBB expansion files of a bundle to Android/obb/<package>/
+ * while the APKs are written to the session.
+ *
+ * Each OBB is written to <name>.partial on its own thread, STORED entries
+ * with FileChannel.transferTo and DEFLATED ones through PipelinedCopy.
+ * await() waits until every OBB is complete and synced; the partials are
+ * renamed into place only once InstallResultReceiver reports the session
+ * installed, so a failed, rejected or cancelled install leaves no OBB
+ * behind. start() checks storage access and free space first.
+ *
+ * Every deployment is also recorded in SharedPreferences from start() on,
+ * with its session id once known. The result can then be applied by a
+ * process that never saw the deployment, and sweep() finishes the ones
+ * whose result never arrived, e.g. because the process died in between.
+ */
+public class ObbDeployer {
+
+    private static final String TAG = "ObbDeployer";
+
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final String PREFS = "obb_deployments";
+    /** Keep this much free after the OBBs are written. */
+    private static final long FREE_SPACE_MARGIN = 64L * 1024 * 1024;
+    /** transferTo in steps this big, so cancel() is noticed quickly. */
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private static class Job {
+        final ZipArchive.Entry entry;
+        final File partial;
+        final File target;
+
+        Job(ZipArchive.Entry entry, File dir) {
+            this.entry = entry;
+            this.target = new File(dir, entry.getFileName());
+            this.partial = new File(dir, entry.getFileName() + PARTIAL_SUFFIX);
+        }
+    }
+
+    /** Deployers whose OBBs wait for their session's result, by session id. */
+    private static final Map<Integer, ObbDeployer> PENDING = new HashMap<>();
+    /** Deployers of this process by record key, copying or waiting; guarded by PENDING. */
+    private static final Map<String, ObbDeployer> LIVE = new HashMap<>();
+
+    private final Context context;
+    private final String key;
+    private final ZipArchive zip;
+    private final List<Job> jobs;
+    private final List<Future<Void>> futures = new ArrayList<>();
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final ExecutorService pool;
+    private final long start = SystemClock.elapsedRealtime();
+    private final long startTime = System.currentTimeMillis();
+    private int sessionId = -1;
+
+    private ObbDeployer(Context context, File dir, ZipArchive zip, List<Job> jobs) {
+        this.context = context.getApplicationContext();
+        this.key = dir.getPath() + "#" + startTime;
+        this.zip = zip;
+        this.jobs = jobs;
+        this.pool = Executors.newFixedThreadPool(Math.min(SessionWriter.defaultWriteThreads(), jobs.size()));
+    }
+
+    /**
+     * Whether this app may write other apps' OBB directories. Up to API 29
+     * that takes WRITE_EXTERNAL_STORAGE, which InstallActivity requests;
+     * from API 30 on, installers (REQUEST_INSTALL_PACKAGES) have access.
+     */
+    public static boolean hasStorageAccess(Context context) {
+        return Build.VERSION.SDK_INT < 23 || Build.VERSION.SDK_INT >= 30
+                || context.checkSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Start copying the .obb entries of zip for packageName.
+     * Returns null if the bundle has none, or if the OBB directory can't be
+     * written; the APKs are then installed without them. Throws if they
+     * don't fit.
+     */
+    public static ObbDeployer start(Context context, ZipArchive zip, String packageName) throws IOException {
+        List<ZipArchive.Entry> obbs = new ArrayList<>();
+        long needed = 0;
+        for (ZipArchive.Entry entry : zip.getEntries()) {
+            if (!entry.isDirectory() && entry.name.toLowerCase().endsWith(".obb")) {
+                obbs.add(entry);
+                needed += entry.size;
+            }
+        }
+        if (obbs.isEmpty()) {
+            return null;
+        }
+
+        if (!hasStorageAccess(context)) {
+            Logger.log(context, TAG, "No storage permission, installing without " + obbs.size() + " OBB files");
+            return null;
+        }
+        // Our own obb dir is Android/obb/<us>; the target is its sibling
+        File dir = new File(context.getObbDir().getParentFile(), packageName);
+        if ((!dir.isDirectory() && !dir.mkdirs()) || !dir.canWrite()) {
+            Logger.log(context, TAG, "Cannot write " + dir + ", installing without " + obbs.size() + " OBB files");
+            return null;
+        }
+
+        // Finish earlier deployments first, so their partials don't count here
+        sweep(context);
+
+        // An OBB being replaced frees its space only after the rename
+        long available = new StatFs(dir.getPath()).getAvailableBytes();
+        if (available < needed + FREE_SPACE_MARGIN) {
+            throw new IOException("Not enough space for OBB files: need " + (needed >> 20)
+                    + " MB, " + (available >> 20) + " MB free");
+        }
+
+        deleteStrayPartials(context, dir);
+
+        List<Job> jobs = new ArrayList<>();
+        for (ZipArchive.Entry entry : obbs) {
+            jobs.add(new Job(entry, dir));
+        }
+        Log.d(TAG, "Deploying " + jobs.size() + " OBB files (" + needed + " bytes) to " + dir);
+
+        ObbDeployer deployer = new ObbDeployer(context, dir, zip, jobs);
+        synchronized (PENDING) {
+            LIVE.put(deployer.key, deployer);
+        }
+        deployer.record(-1);
+        for (final Job job : jobs) {
+            final ObbDeployer owner = deployer;
+            deployer.futures.add(deployer.pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    owner.copy(job);
+                    return null;
+                }
+            }));
+        }
+        return deployer;
+    }
+
+    /**
+     * Wait until every OBB is written and synced. On failure the partial
+     * files are removed and the first error is thrown.
+     */
+    public void await() throws IOException {
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            cancel();
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted deploying OBB files");
+        }
+        pool.shutdown();
+        Log.d(TAG, "Wrote " + jobs.size() + " OBB files in " + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    /**
+     * Keep the written OBBs until sessionId's result arrives in
+     * onInstallResult(). Call after await() and before the commit.
+     */
+    public void publishOnSuccess(int sessionId) {
+        synchronized (PENDING) {
+            this.sessionId = sessionId;
+            PENDING.put(sessionId, this);
+        }
+        record(sessionId);
+    }
+
+    /**
+     * Called by InstallResultReceiver with a session's final result: moves
+     * its OBBs into place if it was installed, deletes them otherwise.
+     * Works from the persisted record, so the deploying process may be gone.
+     */
+    public static void onInstallResult(Context context, int sessionId, boolean success) {
+        synchronized (PENDING) {
+            ObbDeployer deployer = PENDING.remove(sessionId);
+            if (deployer != null) {
+                LIVE.remove(deployer.key);
+            }
+        }
+        SharedPreferences prefs = prefs(context);
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            Record record = Record.decode(entry.getKey(), String.valueOf(entry.getValue()));
+            if (record != null && record.sessionId == sessionId) {
+                finish(context, entry.getKey(), record, success);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finish recorded deployments that no process is waiting on any more:
+     * OBBs of a session that is gone but whose package was updated since
+     * are moved into place, all others are deleted. Deployments of this
+     * process and sessions that still exist are left alone. Blocks on
+     * PackageManager calls, so call it off the main thread.
+     */
+    public static void sweep(Context context) {
+        SharedPreferences prefs = prefs(context);
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            synchronized (PENDING) {
+                if (LIVE.containsKey(entry.getKey())) {
+                    continue;
+                }
+            }
+            Record record = Record.decode(entry.getKey(), String.valueOf(entry.getValue()));
+            if (record == null) {
+                prefs.edit().remove(entry.getKey()).commit();
+                continue;
+            }
+            if (record.sessionId >= 0 && sessionExists(context, record.sessionId)) {
+                continue; // Its result may still arrive
+            }
+            boolean installed = record.sessionId >= 0 && updatedSince(context, record.dir.getName(), record.time);
+            Log.d(TAG, "Sweeping OBB deployment for session " + record.sessionId + ", installed=" + installed);
+            finish(context, entry.getKey(), record, installed);
+        }
+    }
+
+    /**
+     * Stop the copies and delete what they wrote.
+     */
+    public void cancel() {
+        synchronized (PENDING) {
+            if (sessionId >= 0) {
+                PENDING.remove(sessionId);
+            }
+            LIVE.remove(key);
+        }
+        cancelled.set(true);
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (Exception ignored) {
+                // Failed or stopped; its partial file goes below
+            }
+        }
+        for (Job job : jobs) {
+            if (job.partial.exists() && !job.partial.delete()) {
+                Log.d(TAG, "Could not delete " + job.partial);
+            }
+        }
+        prefs(context).edit().remove(key).commit();
+        pool.shutdown();
+    }
+
+    // ======== Persisted deployments ========
+
+    /** A deployment as stored: "time;sessionId;name/name/...", keyed by dir#time. */
+    private static class Record {
+        final File dir;
+        final long time;
+        final int sessionId;
+        final String[] names;
+
+        Record(File dir, long time, int sessionId, String[] names) {
+            this.dir = dir;
+            this.time = time;
+            this.sessionId = sessionId;
+            this.names = names;
+        }
+
+        static Record decode(String key, String value) {
+            int hash = key.lastIndexOf('#');
+            String[] parts = value.split(";", 3);
+            if (hash <= 0 || parts.length != 3) {
+                return null;
+            }
+            try {
+                return new Record(new File(key.substring(0, hash)), Long.parseLong(parts[0]),
+                        Integer.parseInt(parts[1]), parts[2].split("/"));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private void record(int sessionId) {
+        StringBuilder sb = new StringBuilder().append(startTime).append(';').append(sessionId).append(';');
+        for (int i = 0; i < jobs.size(); i++) {
+            sb.append(i == 0 ? "" : "/").append(jobs.get(i).target.getName());
+        }
+        // Synchronous: the process may die right after the commit
+        prefs(context).edit().putString(key, sb.toString()).commit();
+    }
+
+    private static void finish(Context context, String key, Record record, boolean success) {
+        for (String name : record.names) {
+            File partial = new File(record.dir, name + PARTIAL_SUFFIX);
+            if (!partial.exists()) {
+                continue;
+            }
+            if (success && partial.renameTo(new File(record.dir, name))) {
+                continue;
+            }
+            if (success) {
+                Logger.log(context, TAG, "Cannot move " + partial.getName() + " into place");
+            }
+            partial.delete();
+        }
+        prefs(context).edit().remove(key).apply();
+        Log.d(TAG, (success ? "Deployed " : "Discarded ") + record.names.length + " OBB files for session "
+                + record.sessionId);
+    }
+
+    /**
+     * Delete *.partial files in dir that no recorded deployment owns,
+     * e.g. from a version that did not record them.
+     */
+    private static void deleteStrayPartials(Context context, File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> owned = new HashSet<>();
+        for (Map.Entry<String, ?> entry : prefs(context).getAll().entrySet()) {
+            Record record = Record.decode(entry.getKey(), String.valueOf(entry.getValue()));
+            if (record != null && record.dir.equals(dir)) {
+                for (String name : record.names) {
+                    owned.add(name + PARTIAL_SUFFIX);
+                }
+            }
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(PARTIAL_SUFFIX) && !owned.contains(file.getName()) && file.delete()) {
+                Log.d(TAG, "Deleted stray " + file);
+            }
+        }
+    }
+
+    private static boolean sessionExists(Context context, int sessionId) {
+        try {
+            return context.getPackageManager().getPackageInstaller().getSessionInfo(sessionId) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static boolean updatedSince(Context context, String packageName, long time) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(packageName, 0);
+            return info.lastUpdateTime >= time;
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    private void copy(Job job) throws IOException {
+        Span span = Span.begin("obb.write");
+        try (FileOutputStream out = new FileOutputStream(job.partial)) {
+            ZipArchive.Entry entry = job.entry;
+            if (entry.isStored()) {
+                FileChannel source = zip.getChannel();
+                FileChannel target = out.getChannel();
+                long offset = zip.getDataOffset(entry);
+                long done = 0;
+                while (done < entry.size) {
+                    checkCancelled();
+                    long sent = source.transferTo(offset + done, Math.min(TRANSFER_CHUNK, entry.size - done), target);
+                    if (sent <= 0) {
+                        throw new EOFException("Unexpected end of archive in " + entry.name);
+                    }
+                    done += sent;
+                }
+            } else {
+                OutputStream checked = new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        checkCancelled();
+                        out.write(b, off, len);
+                    }
+                };
+                try (InputStream in = zip.getInputStream(entry)) {
+                    PipelinedCopy.copy(in, checked, new byte[65536]);
+                }
+            }
+            out.getFD().sync();
+        } finally {
+            span.end();
+        }
+    }
+
+    private void checkCancelled() throws IOException {
+        if (cancelled.get()) {
+            throw new InterruptedIOException("OBB deployment cancelled");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.deviceownerapp;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.zip.ZipException;
+
+/**
+ * Tells a single APK from a split bundle by its content, not its name.
+ *
+ * Seekable sources are classified from the ZIP magic and the central
+ * directory, so only the head and tail of the file are read. Pipes have
+ * no tail to peek at, so they are classified by the name of the first
+ * local entry alone: a heuristic over what APK and bundle tools write
+ * first, not a central directory check. The caller passes the stream it
+ * will install from; the header is read under mark/reset, so the install
+ * still starts at byte 0 and one-shot pipes are only read once.
+ */
+public class PackageFormat {
+
+    private static final String TAG = "PackageFormat";
+
+    public enum Kind {
+        APK,          // A single APK: AndroidManifest.xml at the root
+        BUNDLE,       // XAPK/APKS/APKM-style archive of .apk entries
+        UNSUPPORTED
+    }
+
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+    private static final String MANIFEST = "AndroidManifest.xml";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Classify an archive read in place.
+     */
+    public static Kind detect(ArchiveSource source) throws IOException {
+        Span span = Span.begin("install.detectFormat");
+        try {
+            Kind kind = detectSeekable(source);
+            Log.d(TAG, "Archive is " + kind);
+            return kind;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Classify a stream from its first local header and rewind it.
+     * The stream must support mark/reset.
+     */
+    public static Kind detect(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("Stream can't be rewound after sniffing");
+        }
+        Span span = Span.begin("install.detectFormat");
+        in.mark(LOCAL_HEADER_SIZE + MAX_NAME_LENGTH);
+        try {
+            Kind kind = detectStream(in);
+            Log.d(TAG, "Stream is " + kind);
+            return kind;
+        } finally {
+            in.reset();
+            span.end();
+        }
+    }
+
+    private static Kind detectSeekable(ArchiveSource source) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        while (magic.hasRemaining()) {
+            if (source.getChannel().read(magic, magic.position()) < 0) {
+                return Kind.UNSUPPORTED;
+            }
+        }
+        if (magic.getInt(0) != LOCAL_SIGNATURE) {
+            return Kind.UNSUPPORTED;
+        }
+
+        ZipArchive zip;
+        try {
+            zip = ZipArchive.open(source.getChannel());
+        } catch (ZipException e) {
+            Log.d(TAG, "Unreadable archive: " + e.getMessage());
+            return Kind.UNSUPPORTED;
+        }
+        if (zip.getEntry(MANIFEST) != null) {
+            return Kind.APK;
+        }
+        return SessionWriter.containsApk(zip) ? Kind.BUNDLE : Kind.UNSUPPORTED;
+    }
+
+    /**
+     * Classify a pipe from its first local header. Both kinds are plain
+     * ZIPs, so this goes by what each tool writes first.
+     */
+    private static Kind detectStream(InputStream raw) throws IOException {
+        // Not closed: the caller installs from raw once it is reset
+        DataInputStream in = new DataInputStream(raw);
+        try {
+            byte[] header = new byte[LOCAL_HEADER_SIZE];
+            in.readFully(header);
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != LOCAL_SIGNATURE) {
+                return Kind.UNSUPPORTED;
+            }
+            byte[] name = new byte[buffer.getShort(26) & 0xFFFF];
+            in.readFully(name);
+            return classifyFirstEntry(new String(name, UTF_8));
+        } catch (EOFException e) {
+            return Kind.UNSUPPORTED;
+        }
+    }
+
+    static Kind classifyFirstEntry(String name) {
+        String lower = name.toLowerCase();
+        if (lower.endsWith(".apk") || lower.endsWith(".json") || lower.endsWith(".obb")
+                || lower.startsWith("android/obb/") || lower.equals("icon.png")) {
+            return Kind.BUNDLE;
+        }
+        // What aapt, apksigner and bundletool put first in an APK
+        if (lower.equals("androidmanifest.xml") || lower.startsWith("meta-inf/")
+                || lower.equals("classes.dex") || lower.equals("resources.arsc")
+                || lower.startsWith("res/") || lower.startsWith("lib/")
+                || lower.startsWith("assets/") || lower.startsWith("kotlin/")
+                || lower.equals("stamp-cert-sha256")) {
+            return Kind.APK;
+        }
+        return Kind.UNSUPPORTED;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.deviceownerapp;
+
+import android.app.admin.DevicePolicyManager;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requested permissions of one package and their grant states, loaded in a
+ * single pass. The privilege mode is resolved once for the whole pass and
+ * Dhizuku calls reuse the cached wrapped binder.
+ */
+public class PermissionSnapshot {
+
+    public static class Entry {
+        public final String permission;
+        public final boolean isRuntime;
+        public final int grantState;
+
+        Entry(String permission, boolean isRuntime, int grantState) {
+            this.permission = permission;
+            this.isRuntime = isRuntime;
+            this.grantState = grantState;
+        }
+    }
+
+    public interface Listener {
+        void onEntry(Entry entry);
+    }
+
+    /**
+     * Load every permission requested by packageName, reporting each entry as
+     * soon as it is known. Does binder calls, so run it off the main thread.
+     */
+    public static List<Entry> load(Context context, String packageName, Listener listener)
+            throws PackageManager.NameNotFoundException {
+        PackageManager pm = context.getPackageManager();
+        PackageInfo pkgInfo = pm.getPackageInfo(packageName, PackageManager.GET_PERMISSIONS);
+        String[] permissions = pkgInfo.requestedPermissions;
+
+        List<Entry> entries = new ArrayList<>();
+        if (permissions == null || permissions.length == 0) {
+            return entries;
+        }
+
+        DpmHelper.Mode mode = DpmHelper.getActiveMode(context);
+        for (String permission : permissions) {
+            boolean isRuntime = false;
+            try {
+                PermissionInfo pInfo = pm.getPermissionInfo(permission, 0);
+                if (pInfo.protectionLevel == PermissionInfo.PROTECTION_DANGEROUS) {
+                    isRuntime = true;
+                }
+            } catch (PackageManager.NameNotFoundException e) {
+            }
+
+            int grantState = DevicePolicyManager.PERMISSION_GRANT_STATE_DEFAULT;
+            if (isRuntime && mode != DpmHelper.Mode.NONE) {
+                grantState = DpmHelper.getPermissionGrantState(context, mode, packageName, permission);
+            }
+
+            Entry entry = new Entry(permission, isRuntime, grantState);
+            entries.add(entry);
+            if (listener != null) {
+                listener.onEntry(entry);
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.deviceownerapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies a stream with reading and writing overlapped.
+ *
+ * A reader thread fills buffers from the input (inflating, for ZIP entries)
+ * while the calling thread writes the previous ones to the output (the
+ * session). The two are linked by a small ring of reusable buffers: when
+ * all of them are full the reader waits for the writer, so memory stays at
+ * RING_SIZE buffers whatever the stream size. A copy then takes about
+ * max(read, write) instead of read + write.
+ */
+public class PipelinedCopy {
+
+    static final int RING_SIZE = 4;
+
+    private static final long POLL_MS = 100;
+
+    private static final ExecutorService readers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "apk-reader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static class Chunk {
+        final byte[] data;
+        int length;
+        IOException error;
+
+        Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * Copy in to out. buffer is used as one slot of the ring; the others
+     * are allocated at the same size. Neither stream is closed.
+     * Returns the number of bytes copied.
+     */
+    public static long copy(final InputStream in, OutputStream out, byte[] buffer) throws IOException {
+        final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(RING_SIZE);
+        // One extra slot for the end-of-stream or error marker
+        final BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(RING_SIZE + 1);
+        final AtomicBoolean aborted = new AtomicBoolean(false);
+        final CountDownLatch readerDone = new CountDownLatch(1);
+
+        free.add(new Chunk(buffer));
+        for (int i = 1; i < RING_SIZE; i++) {
+            free.add(new Chunk(new byte[buffer.length]));
+        }
+
+        readers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Chunk chunk = free.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                        if (aborted.get()) {
+                            return;
+                        }
+                        if (chunk == null) {
+                            continue; // Writer is behind; wait for a buffer
+                        }
+                        int read = in.read(chunk.data, 0, chunk.data.length);
+                        chunk.length = read;
+                        full.add(chunk);
+                        if (read == -1) {
+                            return;
+                        }
+                    }
+                } catch (IOException e) {
+                    Chunk marker = new Chunk(null);
+                    marker.error = e;
+                    full.add(marker);
+                } catch (InterruptedException e) {
+                    Chunk marker = new Chunk(null);
+                    marker.error = new InterruptedIOException("Reader interrupted");
+                    full.add(marker);
+                } catch (RuntimeException e) {
+                    Chunk marker = new Chunk(null);
+                    marker.error = new IOException(e.getMessage(), e);
+                    full.add(marker);
+                } finally {
+                    readerDone.countDown();
+                }
+            }
+        });
+
+        long total = 0;
+        try {
+            while (true) {
+                Chunk chunk = full.take();
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                if (chunk.length == -1) {
+                    return total;
+                }
+                out.write(chunk.data, 0, chunk.length);
+                total += chunk.length;
+                free.add(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted copying stream");
+        } finally {
+            // Stop the reader if we leave early, and wait for its current
+            // read so the caller can safely close in
+            aborted.set(true);
+            awaitUninterruptibly(readerDone);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.deviceownerapp;
+
+import android.content.pm.PackageInstaller;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Copies APK streams into a PackageInstaller session.
+ * openWrite, the copy and fsync are each timed as a Span.
+ */
+public class SessionWriter {
+
+    private static final String TAG = "SessionWriter";
+
+    /**
+     * Write in to the session entry called name. size may be -1 if unknown.
+     * Returns the number of bytes written.
+     */
+    public static long write(PackageInstaller.Session session, String name, InputStream in,
+                             long size, byte[] buffer) throws IOException {
+        return write(session, name, in, size, buffer, null);
+    }
+
+    /**
+     * Like write(), also feeding every byte to digest if it isn't null.
+     * The digest is updated on PipelinedCopy's reader thread, so hashing
+     * overlaps the session write instead of adding to it.
+     */
+    public static long write(PackageInstaller.Session session, String name, InputStream in,
+                             long size, byte[] buffer, MessageDigest digest) throws IOException {
+        if (digest != null) {
+            in = new DigestInputStream(in, digest);
+        }
+        OutputStream out = openWrite(session, name, size);
+        try {
+            long total;
+            Span span = Span.begin("session.write");
+            try {
+                // Inflate on one thread while the session write runs on this one
+                total = PipelinedCopy.copy(in, out, buffer);
+            } finally {
+                span.end();
+            }
+
+            fsync(session, out);
+            return total;
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write length bytes of channel starting at offset in to the session
+     * entry called name, for STORED entries whose bytes are the APK as is.
+     *
+     * When the session hands out a plain file descriptor the range is
+     * copied kernel-side with transferTo, never touching the heap. Most
+     * sessions write through a socket bridge instead; then the range is
+     * copied with positional reads, which still skips the inflater.
+     */
+    public static long writeRange(PackageInstaller.Session session, String name, FileChannel channel,
+                                  long offset, long length, byte[] buffer) throws IOException {
+        return writeRange(session, name, channel, offset, length, buffer, null);
+    }
+
+    /**
+     * Like writeRange(), also feeding the range to digest if it isn't null.
+     * Hashing needs the bytes on the heap, so it gives up transferTo.
+     */
+    public static long writeRange(PackageInstaller.Session session, String name, FileChannel channel,
+                                  long offset, long length, byte[] buffer,
+                                  MessageDigest digest) throws IOException {
+        OutputStream out = openWrite(session, name, length);
+        try {
+            Span span = Span.begin("session.write");
+            try {
+                if (out instanceof FileOutputStream && digest == null) {
+                    FileChannel target = ((FileOutputStream) out).getChannel();
+                    long done = 0;
+                    while (done < length) {
+                        long sent = channel.transferTo(offset + done, length - done, target);
+                        if (sent <= 0) {
+                            throw new EOFException("Unexpected end of archive");
+                        }
+                        done += sent;
+                    }
+                } else {
+                    InputStream in = new ZipArchive.RangeInputStream(channel, offset, length);
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        if (digest != null) {
+                            digest.update(buffer, 0, read);
+                        }
+                        out.write(buffer, 0, read);
+                    }
+                }
+            } finally {
+                span.end();
+            }
+
+            fsync(session, out);
+            return length;
+        } finally {
+            out.close();
+        }
+    }
+
+    private static OutputStream openWrite(PackageInstaller.Session session, String name,
+                                          long size) throws IOException {
+        Span span = Span.begin("session.openWrite");
+        try {
+            return session.openWrite(name, 0, size);
+        } finally {
+            span.end();
+        }
+    }
+
+    private static void fsync(PackageInstaller.Session session, OutputStream out) throws IOException {
+        Span span = Span.begin("session.fsync");
+        try {
+            session.fsync(out);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Default number of concurrent split writes: one per core, but no more
+     * than flash storage usefully takes in parallel.
+     */
+    public static int defaultWriteThreads() {
+        return Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Whether zip has any .apk entry to install.
+     */
+    public static boolean containsApk(ZipArchive zip) {
+        for (ZipArchive.Entry entry : zip.getEntries()) {
+            if (isApk(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isApk(ZipArchive.Entry entry) {
+        return !entry.isDirectory() && entry.name.toLowerCase().endsWith(".apk");
+    }
+
+    /**
+     * Write every split of a checked bundle in to session, under its
+     * manifest name (base.apk, split_<name>.apk). Used by both the native
+     * and the Dhizuku session paths. Returns the number of APKs written.
+     *
+     * Splits are inflated and written concurrently, each through its own
+     * openWrite stream. If any split fails the remaining ones are not
+     * started and the first error is thrown; the caller abandons the
+     * session, so a bundle is never committed with a split missing.
+     *
+     * If digests isn't null, the SHA-256 of each split it doesn't already
+     * hold is computed in the same pass and added to it, and DEFLATED
+     * splits are checked against their CRC-32 on the way.
+     */
+    public static int writeSplits(PackageInstaller.Session session, ZipArchive zip,
+                                  SplitBundle bundle, byte[] buffer,
+                                  InstallDigests digests) throws IOException {
+        return writeSplits(session, zip, bundle, buffer, digests, defaultWriteThreads());
+    }
+
+    /**
+     * writeSplits() on at most maxThreads threads; 1 writes in order on
+     * the calling thread.
+     */
+    static int writeSplits(PackageInstaller.Session session, ZipArchive zip, SplitBundle bundle,
+                           byte[] buffer, InstallDigests digests, int maxThreads) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        for (SplitBundle.Split split : bundle.splits) {
+            jobs.add(new Job(split.entry, split.getSessionName()));
+        }
+        return writeAll(session, zip, jobs, buffer, digests, maxThreads);
+    }
+
+    private static class Job {
+        final ZipArchive.Entry entry;
+        final String name;
+
+        Job(ZipArchive.Entry entry, String name) {
+            this.entry = entry;
+            this.name = name;
+        }
+    }
+
+    private static int writeAll(final PackageInstaller.Session session, final ZipArchive zip,
+                                List<Job> jobs, byte[] buffer,
+                                final InstallDigests digests, int maxThreads) throws IOException {
+        int threads = Math.min(maxThreads, jobs.size());
+        if (threads <= 1) {
+            for (Job job : jobs) {
+                writeEntry(session, zip, job.entry, job.name, buffer, digests);
+            }
+            return jobs.size();
+        }
+
+        // Largest first, so one big split doesn't start last and finish alone
+        jobs = new ArrayList<>(jobs);
+        Collections.sort(jobs, new Comparator<Job>() {
+            @Override
+            public int compare(Job a, Job b) {
+                return Long.compare(b.entry.size, a.entry.size);
+            }
+        });
+
+        long start = SystemClock.elapsedRealtime();
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (final Job job : jobs) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if (failed.get()) {
+                            return null; // Session will be abandoned anyway
+                        }
+                        try {
+                            writeEntry(session, zip, job.entry, job.name, new byte[65536], digests);
+                        } catch (Exception e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                        return null;
+                    }
+                }));
+            }
+            // Wait for every task, even after a failure, so nothing is still
+            // writing when the caller abandons the session
+            IOException error = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        Throwable cause = e.getCause();
+                        error = cause instanceof IOException ? (IOException) cause
+                                : new IOException(cause.getMessage(), cause);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted writing splits");
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        } finally {
+            // No shutdownNow(): interrupting a FileChannel read closes the channel
+            pool.shutdown();
+        }
+        Log.d(TAG, "Wrote " + jobs.size() + " splits on " + threads + " threads in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        return jobs.size();
+    }
+
+    private static void writeEntry(PackageInstaller.Session session, ZipArchive zip,
+                                   ZipArchive.Entry entry, String name, byte[] buffer,
+                                   InstallDigests digests) throws IOException {
+        // Recorded digests are reused, keeping STORED splits on transferTo
+        MessageDigest digest = digests != null && !digests.contains(name) ? InstallDigests.newDigest() : null;
+        if (entry.isStored()) {
+            writeRange(session, name, zip.getChannel(), zip.getDataOffset(entry), entry.size, buffer, digest);
+        } else if (digest == null) {
+            try (InputStream in = zip.getInputStream(entry)) {
+                write(session, name, in, entry.size, buffer);
+            }
+        } else {
+            // The inflater already touches every byte; a CRC-32 alongside is nearly free
+            CheckedInputStream in = new CheckedInputStream(zip.getInputStream(entry), new CRC32());
+            try {
+                write(session, name, in, entry.size, buffer, digest);
+            } finally {
+                in.close();
+            }
+            if (in.getChecksum().getValue() != entry.crc) {
+                throw new ZipException("CRC mismatch in " + entry.name);
+            }
+        }
+        if (digest != null) {
+            digests.put(name, digest.digest());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.deviceownerapp;
+
+import android.os.SystemClock;
+import android.os.Trace;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A timed section of work.
+ *
+ * begin() opens an android.os.Trace section, so spans show up in Perfetto
+ * and systrace captures, and end() closes it and records the duration in
+ * LatencyStats under the span's name. A span must end on the thread that
+ * began it, normally in a finally block:
+ *
+ *     Span span = Span.begin("session.fsync");
+ *     try { ... } finally { span.end(); }
+ *
+ * Work that finishes elsewhere, such as a commit whose result arrives in a
+ * broadcast, is timed with startPending()/finishPending() instead. Paths
+ * that give up on the result call cancelPending(); anything left over is
+ * dropped oldest first once MAX_PENDING are outstanding.
+ */
+public class Span {
+
+    // Trace section names longer than this are rejected by the platform
+    private static final int MAX_SECTION_NAME = 127;
+
+    private final String name;
+    private final long startNanos;
+    private boolean ended = false;
+
+    private Span(String name) {
+        this.name = name;
+        this.startNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static Span begin(String name) {
+        Trace.beginSection(name.length() > MAX_SECTION_NAME ? name.substring(0, MAX_SECTION_NAME) : name);
+        return new Span(name);
+    }
+
+    /**
+     * Close the trace section and record the duration. Returns it in nanoseconds.
+     */
+    public long end() {
+        long nanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+        if (!ended) {
+            ended = true;
+            Trace.endSection();
+            LatencyStats.record(name, nanos);
+        }
+        return nanos;
+    }
+
+    // ======== Cross-thread timings ========
+
+    // More than any real backlog of results; bounds what lost results can leak
+    private static final int MAX_PENDING = 64;
+
+    private static final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Remember when an operation identified by name and key started.
+     */
+    public static void startPending(String name, int key) {
+        pending.put(name + "#" + key, SystemClock.elapsedRealtimeNanos());
+        while (pending.size() > MAX_PENDING) {
+            String oldest = null;
+            long oldestStart = Long.MAX_VALUE;
+            for (Map.Entry<String, Long> entry : pending.entrySet()) {
+                if (entry.getValue() < oldestStart) {
+                    oldestStart = entry.getValue();
+                    oldest = entry.getKey();
+                }
+            }
+            if (oldest == null || pending.remove(oldest) == null) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Record the time since startPending() for the same name and key, if any.
+     */
+    public static void finishPending(String name, int key) {
+        Long start = pending.remove(name + "#" + key);
+        if (start != null) {
+            LatencyStats.record(name, SystemClock.elapsedRealtimeNanos() - start);
+        }
+    }
+
+    /**
+     * Forget startPending() for name and key without recording anything,
+     * for operations whose result will never arrive.
+     */
+    public static void cancelPending(String name, int key) {
+        pending.remove(name + "#" + key);
+    }
+}
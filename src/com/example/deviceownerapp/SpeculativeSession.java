@@ -0,0 +1,118 @@
+package com.example.deviceownerapp;
+
+import android.content.Context;
+import android.content.pm.PackageInstaller;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * An install session created and opened on the binder executor while the
+ * caller opens and inspects the APK or archive.
+ *
+ * createSession/openSession, and in Dhizuku mode the reflective setup and
+ * binder wrapping, are a fixed cost per install. Starting them first lets
+ * that cost overlap with opening the source and reading its central
+ * directory. If the source turns out to be invalid, abandon() discards the
+ * session, even if it is still being created.
+ */
+public class SpeculativeSession {
+
+    private static final String TAG = "SpeculativeSession";
+
+    private static class Opened {
+        final int sessionId;
+        final PackageInstaller.Session session;
+
+        Opened(int sessionId, PackageInstaller.Session session) {
+            this.sessionId = sessionId;
+            this.session = session;
+        }
+    }
+
+    private final CompletableFuture<Opened> future;
+
+    private SpeculativeSession(CompletableFuture<Opened> future) {
+        this.future = future;
+    }
+
+    /**
+     * Start a session on this app's own PackageInstaller.
+     */
+    public static SpeculativeSession startNative(Context context) {
+        final PackageInstaller installer = context.getPackageManager().getPackageInstaller();
+        return new SpeculativeSession(DpmAsync.submit("createNativeSession", new Callable<Opened>() {
+            @Override
+            public Opened call() throws Exception {
+                Span span = Span.begin("session.setup");
+                try {
+                    PackageInstaller.SessionParams params = new PackageInstaller.SessionParams(
+                            PackageInstaller.SessionParams.MODE_FULL_INSTALL);
+                    int sessionId = installer.createSession(params);
+                    return new Opened(sessionId, installer.openSession(sessionId));
+                } finally {
+                    span.end();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Start a session through Dhizuku's wrapped PackageInstaller.
+     */
+    public static SpeculativeSession startDhizuku(Context context) {
+        final Context app = context.getApplicationContext();
+        return new SpeculativeSession(DpmAsync.submit("createDhizukuSession", new Callable<Opened>() {
+            @Override
+            public Opened call() throws Exception {
+                Span span = Span.begin("session.setup");
+                try {
+                    DpmHelper.DhizukuSession opened = DpmHelper.openDhizukuSession(app);
+                    return new Opened(opened.sessionId, opened.session);
+                } finally {
+                    span.end();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Wait for the session. Throws whatever creating it threw.
+     */
+    public PackageInstaller.Session getSession() throws Exception {
+        return await().session;
+    }
+
+    public int getSessionId() throws Exception {
+        return await().sessionId;
+    }
+
+    private Opened await() throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Abandon the session now, or as soon as it has been created.
+     */
+    public void abandon() {
+        future.whenComplete(new BiConsumer<Opened, Throwable>() {
+            @Override
+            public void accept(Opened opened, Throwable error) {
+                if (opened != null) {
+                    Log.d(TAG, "Abandoning session " + opened.sessionId);
+                    try { opened.session.abandon(); } catch (Exception ignored) {}
+                    // A commit that failed part way won't report a result
+                    Span.cancelPending("install.commitToResult", opened.sessionId);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.deviceownerapp;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The APKs of a split bundle, identified by their own manifests.
+ *
+ * read() parses AndroidManifest.xml out of every inner APK and rejects the
+ * bundle before anything is written to a session if the splits don't
+ * belong together: one base, one package name, one versionCode, no
+ * duplicate split names and every <uses-split> present.
+ */
+public class SplitBundle {
+
+    private static final String TAG = "SplitBundle";
+
+    private static final String MANIFEST = "AndroidManifest.xml";
+
+    public static class Split {
+        public final ZipArchive.Entry entry;
+        public final BinaryManifest manifest;
+
+        Split(ZipArchive.Entry entry, BinaryManifest manifest) {
+            this.entry = entry;
+            this.manifest = manifest;
+        }
+
+        /**
+         * Session file name: base.apk, or split_<name>.apk.
+         */
+        public String getSessionName() {
+            return manifest.isBase() ? "base.apk" : "split_" + manifest.splitName + ".apk";
+        }
+    }
+
+    public final String packageName;
+    public final long versionCode;
+    public final List<Split> splits;
+
+    SplitBundle(String packageName, long versionCode, List<Split> splits) {
+        this.packageName = packageName;
+        this.versionCode = versionCode;
+        this.splits = Collections.unmodifiableList(splits);
+    }
+
+    /**
+     * Read the manifest of every .apk entry of zip and check that they form
+     * one installable app. Throws IOException describing the first problem.
+     */
+    public static SplitBundle read(ZipArchive zip) throws IOException {
+        Span span = Span.begin("bundle.readManifests");
+        try {
+            List<Split> splits = new ArrayList<>();
+            for (ZipArchive.Entry entry : zip.getEntries()) {
+                if (SessionWriter.isApk(entry)) {
+                    try {
+                        splits.add(new Split(entry, readManifest(zip, entry)));
+                    } catch (IOException e) {
+                        throw new IOException(entry.name + ": " + e.getMessage(), e);
+                    }
+                }
+            }
+            SplitBundle bundle = check(splits);
+            Log.d(TAG, "Bundle " + bundle.packageName + " v" + bundle.versionCode
+                    + " with " + splits.size() + " APKs");
+            return bundle;
+        } finally {
+            span.end();
+        }
+    }
+
+    static SplitBundle check(List<Split> splits) throws IOException {
+        if (splits.isEmpty()) {
+            throw new IOException("No .apk files found inside the XAPK/ZIP.");
+        }
+
+        Split base = null;
+        Set<String> names = new HashSet<>();
+        for (Split split : splits) {
+            BinaryManifest manifest = split.manifest;
+            if (manifest.isBase()) {
+                if (base != null) {
+                    throw new IOException("Two base APKs: " + base.entry.name + " and " + split.entry.name);
+                }
+                base = split;
+            } else if (!names.add(manifest.splitName)) {
+                throw new IOException("Split " + manifest.splitName + " appears twice");
+            }
+        }
+        if (base == null) {
+            throw new IOException("Bundle has no base APK");
+        }
+
+        String packageName = base.manifest.packageName;
+        long versionCode = base.manifest.versionCode;
+        for (Split split : splits) {
+            BinaryManifest manifest = split.manifest;
+            if (!manifest.packageName.equals(packageName)) {
+                throw new IOException(split.entry.name + " is for " + manifest.packageName
+                        + ", not " + packageName);
+            }
+            if (manifest.versionCode != versionCode) {
+                throw new IOException(split.entry.name + " has versionCode " + manifest.versionCode
+                        + ", base has " + versionCode);
+            }
+            for (String required : manifest.usesSplits) {
+                if (required != null && !names.contains(required)) {
+                    throw new IOException(split.entry.name + " needs missing split " + required);
+                }
+            }
+        }
+        return new SplitBundle(packageName, versionCode, new ArrayList<>(splits));
+    }
+
+    /**
+     * AndroidManifest.xml of an inner APK. A STORED APK is opened in place
+     * as a nested archive; a DEFLATED one is scanned until the manifest.
+     */
+    private static BinaryManifest readManifest(ZipArchive zip, ZipArchive.Entry entry) throws IOException {
+        if (entry.isStored()) {
+            ZipArchive apk = ZipArchive.open(zip.getChannel(), zip.getDataOffset(entry), entry.size);
+            ZipArchive.Entry manifest = apk.getEntry(MANIFEST);
+            if (manifest == null) {
+                throw new IOException("No " + MANIFEST);
+            }
+            try (InputStream in = apk.getInputStream(manifest)) {
+                return BinaryManifest.read(in);
+            }
+        }
+        try (ZipInputStream in = new ZipInputStream(zip.getInputStream(entry))) {
+            ZipEntry inner;
+            while ((inner = in.getNextEntry()) != null) {
+                if (MANIFEST.equals(inner.getName())) {
+                    return BinaryManifest.read(in);
+                }
+            }
+        }
+        throw new IOException("No " + MANIFEST);
+    }
+}
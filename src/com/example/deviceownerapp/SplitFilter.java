@@ -0,0 +1,218 @@
+package com.example.deviceownerapp;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.LocaleList;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drops config splits this device can never use.
+ *
+ * Config splits are named config.<qualifier> (or <feature>.config.<qualifier>)
+ * by bundletool. For each owner (the base or a feature split) only the ABI
+ * split for the most preferred supported ABI, the density split closest to
+ * the screen and the language splits of the configured locales are kept.
+ * The base, feature splits and config splits with qualifiers we don't
+ * recognise are always kept. If no ABI split matches, all are kept and the
+ * installer decides.
+ */
+public class SplitFilter {
+
+    private static final String TAG = "SplitFilter";
+
+    private static final String CONFIG_PREFIX = "config.";
+
+    private static final Map<String, Integer> DENSITIES = new HashMap<>();
+
+    static {
+        DENSITIES.put("ldpi", 120);
+        DENSITIES.put("mdpi", 160);
+        DENSITIES.put("tvdpi", 213);
+        DENSITIES.put("hdpi", 240);
+        DENSITIES.put("xhdpi", 320);
+        DENSITIES.put("xxhdpi", 480);
+        DENSITIES.put("xxxhdpi", 640);
+    }
+
+    private static final Set<String> ABIS = new HashSet<>(Arrays.asList(
+            "armeabi", "armeabi_v7a", "arm64_v8a", "x86", "x86_64", "mips", "mips64", "riscv64"));
+
+    private final List<String> abis;
+    private final int densityDpi;
+    private final Set<String> languages;
+
+    SplitFilter(List<String> abis, int densityDpi, Set<String> languages) {
+        this.abis = abis;
+        this.densityDpi = densityDpi;
+        this.languages = languages;
+    }
+
+    /**
+     * A filter for this device: its supported ABIs in preference order,
+     * its screen density and the languages of its configured locales.
+     */
+    public static SplitFilter forDevice(Context context) {
+        List<String> abis = new ArrayList<>();
+        for (String abi : Build.SUPPORTED_ABIS) {
+            abis.add(abi.replace('-', '_'));
+        }
+        Set<String> languages = new HashSet<>();
+        if (Build.VERSION.SDK_INT >= 24) {
+            LocaleList locales = context.getResources().getConfiguration().getLocales();
+            for (int i = 0; i < locales.size(); i++) {
+                languages.add(locales.get(i).getLanguage());
+            }
+        } else {
+            languages.add(context.getResources().getConfiguration().locale.getLanguage());
+        }
+        return new SplitFilter(abis, context.getResources().getDisplayMetrics().densityDpi, languages);
+    }
+
+    /**
+     * The part of bundle this device needs, splits in bundle order.
+     */
+    public SplitBundle select(SplitBundle bundle) {
+        // Group config splits by owner and qualifier kind
+        Map<String, List<SplitBundle.Split>> abiSplits = new HashMap<>();
+        Map<String, List<SplitBundle.Split>> densitySplits = new HashMap<>();
+        Set<SplitBundle.Split> dropped = new HashSet<>();
+
+        for (SplitBundle.Split split : bundle.splits) {
+            String qualifier = getQualifier(split);
+            if (qualifier == null) {
+                continue;
+            }
+            String owner = getOwner(split);
+            if (ABIS.contains(qualifier)) {
+                group(abiSplits, owner).add(split);
+            } else if (DENSITIES.containsKey(qualifier)) {
+                group(densitySplits, owner).add(split);
+            } else if (isLanguage(qualifier) && !languages.contains(qualifier)) {
+                dropped.add(split);
+            }
+        }
+        for (List<SplitBundle.Split> group : abiSplits.values()) {
+            SplitBundle.Split best = bestAbi(group);
+            if (best != null) {
+                dropAllBut(group, best, dropped);
+            }
+        }
+        for (List<SplitBundle.Split> group : densitySplits.values()) {
+            dropAllBut(group, bestDensity(group), dropped);
+        }
+
+        List<SplitBundle.Split> selected = new ArrayList<>();
+        long skippedBytes = 0;
+        for (SplitBundle.Split split : bundle.splits) {
+            if (dropped.contains(split)) {
+                skippedBytes += split.entry.size;
+                Log.d(TAG, "Skipping " + split.manifest.splitName + " (" + split.entry.size + " bytes)");
+            } else {
+                selected.add(split);
+            }
+        }
+        Log.d(TAG, "Installing " + selected.size() + " of " + bundle.splits.size()
+                + " splits, skipped " + skippedBytes + " bytes");
+        return new SplitBundle(bundle.packageName, bundle.versionCode, selected);
+    }
+
+    private SplitBundle.Split bestAbi(List<SplitBundle.Split> group) {
+        for (String abi : abis) {
+            for (SplitBundle.Split split : group) {
+                if (abi.equals(getQualifier(split))) {
+                    return split;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The smallest density at or above the screen's, else the largest,
+     * as the framework picks resources.
+     */
+    private SplitBundle.Split bestDensity(List<SplitBundle.Split> group) {
+        SplitBundle.Split best = null;
+        int bestDpi = 0;
+        for (SplitBundle.Split split : group) {
+            int dpi = DENSITIES.get(getQualifier(split));
+            boolean better;
+            if (best == null) {
+                better = true;
+            } else if (bestDpi >= densityDpi) {
+                better = dpi >= densityDpi && dpi < bestDpi;
+            } else {
+                better = dpi > bestDpi;
+            }
+            if (better) {
+                best = split;
+                bestDpi = dpi;
+            }
+        }
+        return best;
+    }
+
+    private static void dropAllBut(List<SplitBundle.Split> group, SplitBundle.Split keep,
+                                   Set<SplitBundle.Split> dropped) {
+        for (SplitBundle.Split split : group) {
+            if (split != keep) {
+                dropped.add(split);
+            }
+        }
+    }
+
+    private static List<SplitBundle.Split> group(Map<String, List<SplitBundle.Split>> groups, String owner) {
+        List<SplitBundle.Split> group = groups.get(owner);
+        if (group == null) {
+            group = new ArrayList<>();
+            groups.put(owner, group);
+        }
+        return group;
+    }
+
+    /**
+     * The qualifier after "config." in a config split's name, or null.
+     */
+    static String getQualifier(SplitBundle.Split split) {
+        String name = split.manifest.splitName;
+        if (name == null || split.manifest.isFeatureSplit) {
+            return null;
+        }
+        int index = 0;
+        if (!name.startsWith(CONFIG_PREFIX)) {
+            int dot = name.indexOf("." + CONFIG_PREFIX);
+            if (dot < 0) {
+                return null;
+            }
+            index = dot + 1;
+        }
+        return name.substring(index + CONFIG_PREFIX.length()).toLowerCase(Locale.ROOT);
+    }
+
+    private static String getOwner(SplitBundle.Split split) {
+        String owner = split.manifest.configForSplit;
+        return owner != null ? owner : "";
+    }
+
+    private static boolean isLanguage(String qualifier) {
+        if (qualifier.length() < 2 || qualifier.length() > 3) {
+            return false;
+        }
+        for (int i = 0; i < qualifier.length(); i++) {
+            char c = qualifier.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
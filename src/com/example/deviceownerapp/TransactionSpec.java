@@ -0,0 +1,209 @@
+package com.example.deviceownerapp;
+
+import android.content.ComponentName;
+import android.content.IntentSender;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.RemoteException;
+
+/**
+ * Argument layout of one hidden binder call for one SDK level.
+ *
+ * Each spec lists what goes into the Parcel after the interface token and
+ * what comes back in the reply, so the per-release differences (the
+ * "parent" flag added to the DPM hidden-state calls in API 30, the
+ * forTransferred flag added to session commit in API 28, the RemoteCallback
+ * that replaced setPermissionGrantState's return value in API 29) live in
+ * one table instead of in every caller. transact() sends exactly one
+ * transaction and never retries.
+ */
+public class TransactionSpec {
+
+    static final String DPM_DESCRIPTOR = "android.app.admin.IDevicePolicyManager";
+    static final String SESSION_DESCRIPTOR = "android.content.pm.IPackageInstallerSession";
+
+    public enum Arg {
+        ADMIN,           // Non-null ComponentName: presence flag + parcelable
+        STRING,          // String value
+        BOOLEAN,         // boolean value, written as int
+        INT,             // int value
+        INTENT_SENDER,   // Non-null IntentSender: presence flag + parcelable
+        REMOTE_CALLBACK, // Non-null android.os.RemoteCallback: presence flag + parcelable
+        FALSE            // Constant false, consumes no value
+    }
+
+    public enum Reply {
+        VOID,
+        BOOLEAN,
+        INT
+    }
+
+    public final TransactionTable.Code code;
+    public final String descriptor;
+    public final Reply reply;
+    private final Arg[] args;
+
+    private TransactionSpec(TransactionTable.Code code, String descriptor, Reply reply, Arg... args) {
+        this.code = code;
+        this.descriptor = descriptor;
+        this.reply = reply;
+        this.args = args;
+    }
+
+    private static final TransactionSpec[] specs = new TransactionSpec[TransactionTable.Code.values().length];
+
+    static {
+        for (TransactionTable.Code code : TransactionTable.Code.values()) {
+            specs[code.ordinal()] = forSdk(code, android.os.Build.VERSION.SDK_INT);
+        }
+    }
+
+    /**
+     * The spec for this device, or null if the call isn't supported here.
+     */
+    public static TransactionSpec find(TransactionTable.Code code) {
+        return specs[code.ordinal()];
+    }
+
+    /**
+     * The spec for this device, throwing if the call isn't supported here.
+     */
+    public static TransactionSpec get(TransactionTable.Code code) {
+        TransactionSpec spec = find(code);
+        if (spec == null) {
+            throw new UnsupportedOperationException("No argument layout for " + code
+                    + " on API " + android.os.Build.VERSION.SDK_INT);
+        }
+        return spec;
+    }
+
+    /**
+     * Argument layouts per SDK level. Returns null for calls that are not
+     * described here or that need arguments we can't supply on that release.
+     */
+    static TransactionSpec forSdk(TransactionTable.Code code, int sdk) {
+        switch (code) {
+            case DPM_SET_APPLICATION_HIDDEN:
+                // setApplicationHidden(admin, callerPackage, packageName, hidden[, parent])
+                return sdk >= 30
+                        ? dpm(code, Reply.BOOLEAN, Arg.ADMIN, Arg.STRING, Arg.STRING, Arg.BOOLEAN, Arg.FALSE)
+                        : dpm(code, Reply.BOOLEAN, Arg.ADMIN, Arg.STRING, Arg.STRING, Arg.BOOLEAN);
+            case DPM_IS_APPLICATION_HIDDEN:
+                // isApplicationHidden(admin, callerPackage, packageName[, parent])
+                return sdk >= 30
+                        ? dpm(code, Reply.BOOLEAN, Arg.ADMIN, Arg.STRING, Arg.STRING, Arg.FALSE)
+                        : dpm(code, Reply.BOOLEAN, Arg.ADMIN, Arg.STRING, Arg.STRING);
+            case DPM_GET_PERMISSION_GRANT_STATE:
+                // getPermissionGrantState(admin, callerPackage, packageName, permission)
+                return dpm(code, Reply.INT, Arg.ADMIN, Arg.STRING, Arg.STRING, Arg.STRING);
+            case DPM_SET_PERMISSION_GRANT_STATE:
+                // setPermissionGrantState(admin, callerPackage, packageName, permission, grantState[, callback]);
+                // API 29 made it void and reports the result through the callback
+                return sdk >= 29
+                        ? dpm(code, Reply.VOID, Arg.ADMIN, Arg.STRING, Arg.STRING, Arg.STRING, Arg.INT,
+                                Arg.REMOTE_CALLBACK)
+                        : dpm(code, Reply.BOOLEAN, Arg.ADMIN, Arg.STRING, Arg.STRING, Arg.STRING, Arg.INT);
+            case SESSION_COMMIT:
+                // commit(statusReceiver[, forTransferred])
+                return sdk >= 28
+                        ? new TransactionSpec(code, SESSION_DESCRIPTOR, Reply.VOID, Arg.INTENT_SENDER, Arg.FALSE)
+                        : new TransactionSpec(code, SESSION_DESCRIPTOR, Reply.VOID, Arg.INTENT_SENDER);
+            default:
+                return null;
+        }
+    }
+
+    private static TransactionSpec dpm(TransactionTable.Code code, Reply reply, Arg... args) {
+        return new TransactionSpec(code, DPM_DESCRIPTOR, reply, args);
+    }
+
+    /**
+     * Number of values encode() and transact() expect.
+     */
+    public int getValueCount() {
+        int count = 0;
+        for (Arg arg : args) {
+            if (arg != Arg.FALSE) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write the interface token and the values into data.
+     */
+    public void encode(Parcel data, Object... values) {
+        if (values.length != getValueCount()) {
+            throw new IllegalArgumentException(code + " takes " + getValueCount()
+                    + " values, got " + values.length);
+        }
+        data.writeInterfaceToken(descriptor);
+        int next = 0;
+        for (Arg arg : args) {
+            switch (arg) {
+                case ADMIN:
+                    data.writeInt(1); // Not null
+                    ((ComponentName) values[next++]).writeToParcel(data, 0);
+                    break;
+                case STRING:
+                    data.writeString((String) values[next++]);
+                    break;
+                case BOOLEAN:
+                    data.writeInt((Boolean) values[next++] ? 1 : 0);
+                    break;
+                case INT:
+                    data.writeInt((Integer) values[next++]);
+                    break;
+                case INTENT_SENDER:
+                    data.writeInt(1); // Not null
+                    ((IntentSender) values[next++]).writeToParcel(data, 0);
+                    break;
+                case REMOTE_CALLBACK:
+                    data.writeInt(1); // Not null
+                    ((Parcelable) values[next++]).writeToParcel(data, 0);
+                    break;
+                case FALSE:
+                    data.writeInt(0);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Read the result from a reply, rethrowing any exception it carries.
+     * Returns null for VOID, a Boolean for BOOLEAN and an Integer for INT.
+     */
+    public Object decode(Parcel reply) {
+        reply.readException();
+        switch (this.reply) {
+            case BOOLEAN:
+                return reply.readInt() != 0;
+            case INT:
+                return reply.readInt();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Encode the values, send a single transaction to binder and decode the
+     * reply. Nothing is retried: once this is called the call may have run.
+     */
+    public Object transact(IBinder binder, Object... values) throws RemoteException {
+        int transactionCode = TransactionTable.require(code);
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        Span span = Span.begin("binder." + code);
+        try {
+            encode(data, values);
+            if (!binder.transact(transactionCode, data, reply, 0)) {
+                throw new IllegalStateException(code + " (" + transactionCode + ") not handled by " + descriptor);
+            }
+            return decode(reply);
+        } finally {
+            span.end();
+            data.recycle();
+            reply.recycle();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.deviceownerapp;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Binder transaction codes for the hidden system interfaces we call directly.
+ *
+ * Every code is resolved once per process from the TRANSACTION_* fields of the
+ * AIDL Stub classes and stored in a primitive array indexed by Code. If a field
+ * can't be read, the code comes from a fallback table. That table only covers
+ * Android 8.x (API 27 for IDevicePolicyManager, API 26-27 for the installer and
+ * session); on every other release a code whose field can't be read stays
+ * MISSING, require() fails instead of sending a guessed code to a system
+ * service, and missing() names it for the status line.
+ */
+public class TransactionTable {
+
+    private static final String TAG = "TransactionTable";
+
+    static final String DPM_STUB = "android.app.admin.IDevicePolicyManager$Stub";
+    static final String INSTALLER_STUB = "android.content.pm.IPackageInstaller$Stub";
+    static final String SESSION_STUB = "android.content.pm.IPackageInstallerSession$Stub";
+
+    public static final int MISSING = -1;
+
+    public enum Code {
+        DPM_SET_APPLICATION_HIDDEN(DPM_STUB, "setApplicationHidden"),
+        DPM_IS_APPLICATION_HIDDEN(DPM_STUB, "isApplicationHidden"),
+        DPM_GET_PERMISSION_GRANT_STATE(DPM_STUB, "getPermissionGrantState"),
+        DPM_SET_PERMISSION_GRANT_STATE(DPM_STUB, "setPermissionGrantState"),
+        INSTALLER_CREATE_SESSION(INSTALLER_STUB, "createSession"),
+        INSTALLER_ABANDON_SESSION(INSTALLER_STUB, "abandonSession"),
+        INSTALLER_OPEN_SESSION(INSTALLER_STUB, "openSession"),
+        SESSION_OPEN_WRITE(SESSION_STUB, "openWrite"),
+        SESSION_COMMIT(SESSION_STUB, "commit");
+
+        final String stubClass;
+        final String method;
+
+        Code(String stubClass, String method) {
+            this.stubClass = stubClass;
+            this.method = method;
+        }
+    }
+
+    public enum Source {
+        REFLECTION, // Read from the Stub's TRANSACTION_* field
+        FALLBACK,   // Taken from the table for this SDK_INT
+        MISSING     // Unknown on this device
+    }
+
+    private static final Object lock = new Object();
+    private static volatile int[] codes = null;
+    private static Source[] sources = null;
+
+    /**
+     * Get the transaction code, or MISSING if it is unknown on this device.
+     */
+    public static int get(Code code) {
+        return resolved()[code.ordinal()];
+    }
+
+    /**
+     * Get the transaction code, throwing if it is unknown on this device.
+     */
+    public static int require(Code code) {
+        int value = get(code);
+        if (value == MISSING) {
+            throw new IllegalStateException("No transaction code for " + code.method
+                    + " on API " + android.os.Build.VERSION.SDK_INT);
+        }
+        return value;
+    }
+
+    /**
+     * Comma-separated method names of the codes that are MISSING on this
+     * device, or an empty string if every code resolved.
+     */
+    public static String missing() {
+        int[] table = resolved();
+        StringBuilder sb = new StringBuilder();
+        for (Code code : Code.values()) {
+            if (table[code.ordinal()] == MISSING) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(code.method);
+            }
+        }
+        return sb.toString();
+    }
+
+    public static Source getSource(Code code) {
+        resolved();
+        synchronized (lock) {
+            return sources[code.ordinal()];
+        }
+    }
+
+    /**
+     * One line per code with its value and where it came from.
+     */
+    public static String describe() {
+        int[] table = resolved();
+        StringBuilder sb = new StringBuilder();
+        synchronized (lock) {
+            for (Code code : Code.values()) {
+                sb.append(code.method).append(" = ").append(table[code.ordinal()])
+                        .append(" (").append(sources[code.ordinal()]).append(")\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int[] resolved() {
+        int[] table = codes;
+        if (table != null) {
+            return table;
+        }
+        synchronized (lock) {
+            if (codes == null) {
+                int[] resolvedCodes = new int[Code.values().length];
+                Source[] resolvedSources = new Source[Code.values().length];
+                Span span = Span.begin("reflect.transactionCodes");
+                try {
+                    resolve(TransactionTable.class.getClassLoader(), android.os.Build.VERSION.SDK_INT,
+                            resolvedCodes, resolvedSources);
+                } finally {
+                    span.end();
+                }
+                sources = resolvedSources;
+                codes = resolvedCodes;
+                Log.d(TAG, "Resolved transaction codes for API " + android.os.Build.VERSION.SDK_INT
+                        + ":\n" + describe());
+            }
+            return codes;
+        }
+    }
+
+    /**
+     * Fill codesOut/sourcesOut for every Code, looking up Stub classes through
+     * the given loader and falling back to the table for sdk.
+     */
+    static void resolve(ClassLoader loader, int sdk, int[] codesOut, Source[] sourcesOut) {
+        int[] fallback = fallbackCodes(sdk);
+        String loadedName = null;
+        Class<?> loaded = null;
+
+        for (Code code : Code.values()) {
+            int index = code.ordinal();
+            try {
+                if (!code.stubClass.equals(loadedName)) {
+                    loadedName = code.stubClass;
+                    loaded = null;
+                    loaded = Class.forName(code.stubClass, false, loader);
+                }
+                if (loaded != null) {
+                    java.lang.reflect.Field field = loaded.getDeclaredField("TRANSACTION_" + code.method);
+                    field.setAccessible(true);
+                    codesOut[index] = field.getInt(null);
+                    sourcesOut[index] = Source.REFLECTION;
+                    continue;
+                }
+            } catch (Throwable ignored) {
+                // Hidden API blocked or field renamed; use the fallback table
+            }
+
+            codesOut[index] = fallback[index];
+            sourcesOut[index] = fallback[index] == MISSING ? Source.MISSING : Source.FALLBACK;
+        }
+    }
+
+    /**
+     * Known transaction codes per SDK level, used when reflection fails.
+     * Only Android 8.x is listed; other releases get an all-MISSING table.
+     */
+    static int[] fallbackCodes(int sdk) {
+        int[] table = new int[Code.values().length];
+        Arrays.fill(table, MISSING);
+
+        if (sdk == 27) {
+            // Android 8.1 IDevicePolicyManager
+            table[Code.DPM_SET_APPLICATION_HIDDEN.ordinal()] = 132;
+            table[Code.DPM_IS_APPLICATION_HIDDEN.ordinal()] = 133;
+            table[Code.DPM_SET_PERMISSION_GRANT_STATE.ordinal()] = 212;
+            table[Code.DPM_GET_PERMISSION_GRANT_STATE.ordinal()] = 213;
+        }
+
+        if (sdk >= 26 && sdk <= 27) {
+            // Android 8.x IPackageInstaller: createSession, updateSessionAppIcon,
+            // updateSessionAppLabel, abandonSession, openSession, ...
+            table[Code.INSTALLER_CREATE_SESSION.ordinal()] = 1;
+            table[Code.INSTALLER_ABANDON_SESSION.ordinal()] = 4;
+            table[Code.INSTALLER_OPEN_SESSION.ordinal()] = 5;
+
+            // Android 8.x IPackageInstallerSession: setClientProgress, addClientProgress,
+            // getNames, openWrite, openRead, removeSplit, close, commit, abandon
+            table[Code.SESSION_OPEN_WRITE.ordinal()] = 4;
+            table[Code.SESSION_COMMIT.ordinal()] = 8;
+        }
+
+        return table;
+    }
+}
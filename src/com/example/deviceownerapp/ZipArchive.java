@@ -0,0 +1,535 @@
+package com.example.deviceownerapp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal ZIP reader over a FileChannel.
+ *
+ * Only the end of central directory records and the central directory are
+ * read up front, through read-only memory maps of just those regions, and
+ * decoded into primitive arrays: local header offset, sizes, method, CRC
+ * and a hash of the raw name bytes. getEntry() is a hash table lookup that
+ * compares names as bytes, so no entry name is decoded until asked for.
+ * ZIP64 archives and entries (over 4 GB or 65535 entries) are supported.
+ *
+ * Entry data is read with positional FileChannel reads, so several entries
+ * can be read at once from different threads and nothing needs
+ * java.util.zip.ZipFile's requirement of a real path on disk. Supports
+ * STORED and DEFLATED entries.
+ */
+public class ZipArchive implements Closeable {
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static class Entry {
+        public final String name;
+        public final int method;
+        public final long crc;
+        public final long compressedSize;
+        public final long size;
+        final long localHeaderOffset;
+        private volatile long dataOffset = -1;
+
+        Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public boolean isStored() {
+            return method == METHOD_STORED;
+        }
+
+        /**
+         * The last path segment of the entry name.
+         */
+        public String getFileName() {
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+    }
+
+    private final FileChannel channel;
+    private final long cdOffset;
+
+    // The mapped central directory and, per entry, where its name sits in it
+    private final ByteBuffer cd;
+    private final int[] nameOffsets;
+    private final int[] nameLengths;
+    private final int[] nameHashes;
+
+    private final long[] localHeaderOffsets;
+    private final long[] compressedSizes;
+    private final long[] sizes;
+    private final int[] methods;
+    private final int[] crcs;
+
+    // Open addressing over nameHashes: entry index + 1, 0 for empty
+    private final int[] table;
+
+    private final Entry[] entryCache;
+    private final List<Entry> entries;
+
+    private ZipArchive(FileChannel channel, long cdOffset, ByteBuffer cd, int count) {
+        this.channel = channel;
+        this.cdOffset = cdOffset;
+        this.cd = cd;
+        this.nameOffsets = new int[count];
+        this.nameLengths = new int[count];
+        this.nameHashes = new int[count];
+        this.localHeaderOffsets = new long[count];
+        this.compressedSizes = new long[count];
+        this.sizes = new long[count];
+        this.methods = new int[count];
+        this.crcs = new int[count];
+        this.table = new int[tableSize(count)];
+        this.entryCache = new Entry[count];
+        this.entries = new AbstractList<Entry>() {
+            @Override
+            public Entry get(int index) {
+                return entryAt(index);
+            }
+
+            @Override
+            public int size() {
+                return entryCache.length;
+            }
+        };
+    }
+
+    /**
+     * Parse the central directory of the archive in channel.
+     * The channel stays owned by the caller.
+     */
+    public static ZipArchive open(FileChannel channel) throws IOException {
+        return open(channel, 0, channel.size());
+    }
+
+    /**
+     * Parse an archive stored at [base, base + fileSize) of channel, such as
+     * a STORED APK inside an XAPK. Entry offsets are absolute in channel.
+     */
+    public static ZipArchive open(FileChannel channel, long base, long fileSize) throws IOException {
+        if (fileSize < EOCD_SIZE) {
+            throw new ZipException("Not a ZIP archive (too small)");
+        }
+
+        // The end of central directory record sits in the last 22..65557 bytes
+        int tailSize = (int) Math.min(fileSize, EOCD_SIZE + MAX_COMMENT);
+        long tailStart = fileSize - tailSize;
+        ByteBuffer tail = map(channel, base + tailStart, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipException("Not a ZIP archive (no end of central directory)");
+        }
+
+        long count = tail.getShort(eocd + 10) & 0xFFFF;
+        long cdSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cdOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        long cdLimit = tailStart + eocd;
+        if (count == 0xFFFF || cdSize == ZIP64_MAGIC || cdOffset == ZIP64_MAGIC) {
+            // The ZIP64 locator sits right before the EOCD and points at the
+            // ZIP64 end of central directory record
+            long locator = tailStart + eocd - ZIP64_LOCATOR_SIZE;
+            if (locator >= 0) {
+                ByteBuffer loc = read(channel, base + locator, ZIP64_LOCATOR_SIZE);
+                if (loc.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                    long zip64Eocd = loc.getLong(8);
+                    if (zip64Eocd < 0 || zip64Eocd + ZIP64_EOCD_SIZE > locator) {
+                        throw new ZipException("ZIP64 end of central directory out of range");
+                    }
+                    ByteBuffer rec = read(channel, base + zip64Eocd, ZIP64_EOCD_SIZE);
+                    if (rec.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                        throw new ZipException("Bad ZIP64 end of central directory");
+                    }
+                    count = rec.getLong(32);
+                    cdSize = rec.getLong(40);
+                    cdOffset = rec.getLong(48);
+                    cdLimit = zip64Eocd;
+                }
+            }
+        }
+        if (cdOffset < 0 || cdSize < 0 || cdOffset + cdSize > cdLimit) {
+            throw new ZipException("Central directory out of range");
+        }
+        if (cdSize > Integer.MAX_VALUE || count > cdSize / CENTRAL_HEADER_SIZE) {
+            throw new ZipException("Central directory too large or corrupt");
+        }
+
+        ByteBuffer cd = map(channel, base + cdOffset, (int) cdSize);
+        ZipArchive zip = new ZipArchive(channel, base + cdOffset, cd, (int) count);
+        zip.index(base);
+        return zip;
+    }
+
+    private void index(long base) throws IOException {
+        int limit = cd.limit();
+        int pos = 0;
+        for (int i = 0; i < entryCache.length; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > limit || cd.getInt(pos) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Bad central directory entry " + i);
+            }
+            int nameLength = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cd.getShort(pos + 32) & 0xFFFF;
+            int next = pos + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if (next > limit) {
+                throw new ZipException("Bad central directory entry " + i);
+            }
+
+            long compressedSize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+            long localOffset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localOffset == ZIP64_MAGIC) {
+                // ZIP64 extra field: only the fields that overflowed, in this order
+                int extra = findExtra(pos + CENTRAL_HEADER_SIZE + nameLength, extraLength, ZIP64_EXTRA_ID);
+                if (extra < 0) {
+                    throw new ZipException("Missing ZIP64 extra field in entry " + i);
+                }
+                int dataLength = cd.getShort(extra + 2) & 0xFFFF;
+                int field = extra + 4;
+                int fieldEnd = field + dataLength;
+                if (size == ZIP64_MAGIC) {
+                    size = zip64Field(field, fieldEnd, i);
+                    field += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC) {
+                    compressedSize = zip64Field(field, fieldEnd, i);
+                    field += 8;
+                }
+                if (localOffset == ZIP64_MAGIC) {
+                    localOffset = zip64Field(field, fieldEnd, i);
+                }
+            }
+
+            methods[i] = cd.getShort(pos + 10) & 0xFFFF;
+            crcs[i] = cd.getInt(pos + 16);
+            compressedSizes[i] = compressedSize;
+            sizes[i] = size;
+            localHeaderOffsets[i] = base + localOffset;
+            nameOffsets[i] = pos + CENTRAL_HEADER_SIZE;
+            nameLengths[i] = nameLength;
+            nameHashes[i] = hash(cd, nameOffsets[i], nameLength);
+
+            // First entry wins for duplicate names, as with ZipFile
+            int slot = nameHashes[i] & (table.length - 1);
+            boolean duplicate = false;
+            while (table[slot] != 0) {
+                int other = table[slot] - 1;
+                if (nameHashes[other] == nameHashes[i] && nameEquals(other, cd, nameOffsets[i], nameLength)) {
+                    duplicate = true;
+                    break;
+                }
+                slot = (slot + 1) & (table.length - 1);
+            }
+            if (!duplicate) {
+                table[slot] = i + 1;
+            }
+
+            pos = next;
+        }
+    }
+
+    private int findExtra(int start, int length, int id) {
+        int pos = start;
+        int end = start + length;
+        while (pos + 4 <= end) {
+            int headerId = cd.getShort(pos) & 0xFFFF;
+            int dataLength = cd.getShort(pos + 2) & 0xFFFF;
+            if (headerId == id) {
+                return pos + 4 + dataLength <= end ? pos : -1;
+            }
+            pos += 4 + dataLength;
+        }
+        return -1;
+    }
+
+    private long zip64Field(int field, int fieldEnd, int index) throws ZipException {
+        if (field + 8 > fieldEnd) {
+            throw new ZipException("Short ZIP64 extra field in entry " + index);
+        }
+        long value = cd.getLong(field);
+        if (value < 0) {
+            throw new ZipException("ZIP64 value out of range in entry " + index);
+        }
+        return value;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * The entry called name, or null. A hash lookup; no names are decoded.
+     */
+    public Entry getEntry(String name) {
+        byte[] bytes = name.getBytes(UTF_8);
+        ByteBuffer key = ByteBuffer.wrap(bytes);
+        int hash = hash(key, 0, bytes.length);
+        int slot = hash & (table.length - 1);
+        while (table[slot] != 0) {
+            int index = table[slot] - 1;
+            if (nameHashes[index] == hash && nameEquals(index, key, 0, bytes.length)) {
+                return entryAt(index);
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return null;
+    }
+
+    private Entry entryAt(int index) {
+        Entry entry = entryCache[index];
+        if (entry == null) {
+            byte[] name = new byte[nameLengths[index]];
+            ByteBuffer view = cd.duplicate();
+            view.position(nameOffsets[index]);
+            view.get(name);
+            entry = new Entry(new String(name, UTF_8), methods[index], crcs[index] & 0xFFFFFFFFL,
+                    compressedSizes[index], sizes[index], localHeaderOffsets[index]);
+            // Racing threads may build equal entries; either one is fine
+            entryCache[index] = entry;
+        }
+        return entry;
+    }
+
+    private boolean nameEquals(int index, ByteBuffer other, int offset, int length) {
+        if (nameLengths[index] != length) {
+            return false;
+        }
+        int start = nameOffsets[index];
+        for (int i = 0; i < length; i++) {
+            if (cd.get(start + i) != other.get(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a over raw name bytes.
+     */
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < length; i++) {
+            hash ^= buffer.get(offset + i) & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * A power of two at least twice the entry count.
+     */
+    private static int tableSize(int count) {
+        int size = 16;
+        while (size < count * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Absolute position of the central directory in the channel. An APK
+     * Signing Block, if any, ends right before it.
+     */
+    public long getCentralDirectoryOffset() {
+        return cdOffset;
+    }
+
+    /**
+     * Offset of the entry's first data byte, read from its local header.
+     */
+    public long getDataOffset(Entry entry) throws IOException {
+        long offset = entry.dataOffset;
+        if (offset < 0) {
+            ByteBuffer header = read(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_SIGNATURE) {
+                throw new ZipException("Bad local header for " + entry.name);
+            }
+            int nameLength = header.getShort(26) & 0xFFFF;
+            int extraLength = header.getShort(28) & 0xFFFF;
+            offset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+            entry.dataOffset = offset;
+        }
+        return offset;
+    }
+
+    /**
+     * The raw (possibly compressed) bytes of an entry.
+     */
+    public InputStream getRawInputStream(Entry entry) throws IOException {
+        return new RangeInputStream(channel, getDataOffset(entry), entry.compressedSize);
+    }
+
+    /**
+     * The uncompressed bytes of an entry.
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        InputStream raw = getRawInputStream(entry);
+        switch (entry.method) {
+            case METHOD_STORED:
+                return raw;
+            case METHOD_DEFLATED:
+                return new EntryInflaterInputStream(raw);
+            default:
+                raw.close();
+                throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+    }
+
+    /**
+     * Does not close the channel; whoever opened it closes it.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Map [position, position + length) read-only, little-endian.
+     */
+    private static ByteBuffer map(FileChannel channel, long position, int length) throws IOException {
+        if (position + length > channel.size()) {
+            throw new EOFException("Unexpected end of archive");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // ======== Streams ========
+
+    /**
+     * Reads [start, start + length) of the channel with positional reads.
+     */
+    static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, long start, long length) {
+            this.channel = channel;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == 1 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) return -1;
+            int n = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, n), position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of archive");
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+
+    /**
+     * Raw inflater that feeds zlib one dummy byte after the input ends, as
+     * ZipFile does, and releases the native Inflater on close.
+     */
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof = false;
+        private boolean closed = false;
+
+        EntryInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), 65536);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZIP entry");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+    }
+}
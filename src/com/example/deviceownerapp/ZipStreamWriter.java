@@ -0,0 +1,51 @@
+package com.example.deviceownerapp;
+
+import android.content.pm.PackageInstaller;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Installs from archives that can only be read once, front to back.
+ *
+ * Instead of staging a pipe to disk so the central directory can be read,
+ * the archive is walked by its local headers and every .apk entry is
+ * inflated straight into its own session file as it is reached. The only
+ * copy on disk is the one the session holds.
+ */
+public class ZipStreamWriter {
+
+    private static final String TAG = "ZipStreamWriter";
+
+    /**
+     * Write every .apk entry of the archive in to session, named after the
+     * entry's file name. Returns the number of APKs written.
+     */
+    public static int writeApkEntries(PackageInstaller.Session session, InputStream in,
+                                      byte[] buffer) throws IOException {
+        Span span = Span.begin("archive.stream");
+        try {
+            // Not closed here: in belongs to the caller
+            ZipInputStream zip = new ZipInputStream(in);
+            int count = 0;
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.toLowerCase().endsWith(".apk")) {
+                    continue;
+                }
+                String sessionName = name.substring(name.lastIndexOf('/') + 1);
+                // Size is -1 when the entry uses a trailing data descriptor
+                long written = SessionWriter.write(session, sessionName, zip, entry.getSize(), buffer);
+                Log.d(TAG, "Streamed " + sessionName + " (" + written + " bytes)");
+                count++;
+            }
+            return count;
+        } finally {
+            span.end();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.deviceownerapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the split checks added in front of every bundle install:
+ * parsing one aapt2 manifest, and SplitBundle.read over a five-APK XAPK
+ * whose inner APKs are STORED (opened in place) or DEFLATED (scanned).
+ *
+ *   tests/run.sh bench ManifestBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManifestBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Manifest {
+        byte[] data;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            data = Fixtures.manifest("feature_a");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Bundle {
+        @Param({"true", "false"})
+        public boolean stored;
+
+        File xapk;
+        FileInputStream in;
+        FileChannel channel;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            entries.put("base.apk", Fixtures.apkFor("base"));
+            entries.put("config.arm64_v8a.apk", Fixtures.apkFor("config_arm64"));
+            entries.put("feature_a.apk", Fixtures.apkFor("feature_a"));
+            entries.put("feature_a.config.xxhdpi.apk", Fixtures.apkFor("feature_a_config"));
+            entries.put("feature_b.apk", Fixtures.apkFor("feature_b"));
+            xapk = Fixtures.zip(File.createTempFile("bundle", ".xapk"), entries, stored);
+            in = new FileInputStream(xapk);
+            channel = in.getChannel();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            in.close();
+            xapk.delete();
+        }
+    }
+
+    @Benchmark
+    public BinaryManifest parseManifest(Manifest manifest) throws IOException {
+        return BinaryManifest.parse(manifest.data);
+    }
+
+    @Benchmark
+    public SplitBundle readBundle(Bundle bundle) throws IOException {
+        return SplitBundle.read(ZipArchive.open(bundle.channel));
+    }
+}
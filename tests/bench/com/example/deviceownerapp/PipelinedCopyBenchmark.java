@@ -0,0 +1,115 @@
+package com.example.deviceownerapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Throughput of PipelinedCopy against a plain read/write loop, inflating
+ * 8 MB into a sink. With work=0 the sink only counts bytes, so the
+ * difference is the pipeline's own overhead; with work > 0 each write also
+ * spends that many rounds hashing the buffer, standing in for a session
+ * write, and the pipeline should approach max(inflate, write) per buffer.
+ *
+ *   tests/run.sh bench PipelinedCopyBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelinedCopyBenchmark {
+
+    private static final int SIZE = 8 * 1024 * 1024;
+
+    @Param({"0", "4"})
+    public int work;
+
+    @Param({"65536"})
+    public int bufferSize;
+
+    private byte[] compressed;
+    private byte[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(6, true))) {
+            deflate.write(Fixtures.bytes(SIZE, 1));
+        }
+        compressed = out.toByteArray();
+        buffer = new byte[bufferSize];
+    }
+
+    @Benchmark
+    public long pipelined() throws IOException {
+        try (InputStream in = inflate()) {
+            return PipelinedCopy.copy(in, new Sink(work), buffer);
+        }
+    }
+
+    @Benchmark
+    public long sequential() throws IOException {
+        try (InputStream in = inflate()) {
+            OutputStream out = new Sink(work);
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        }
+    }
+
+    private InputStream inflate() {
+        return new InflaterInputStream(new ByteArrayInputStream(compressed), new Inflater(true), 65536);
+    }
+
+    /** Counts bytes, spending work rounds of hashing on each buffer. */
+    private static class Sink extends OutputStream {
+        private final int work;
+        long hash;
+
+        Sink(int work) {
+            this.work = work;
+        }
+
+        @Override
+        public void write(int b) {
+            hash += b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            long h = hash;
+            for (int round = 0; round < work; round++) {
+                for (int i = off; i < off + len; i++) {
+                    h = h * 31 + b[i];
+                }
+            }
+            hash = h + len;
+        }
+    }
+}
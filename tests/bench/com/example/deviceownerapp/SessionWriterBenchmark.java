@@ -0,0 +1,117 @@
+package com.example.deviceownerapp;
+
+import android.content.pm.PackageInstaller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionWriter.writeSplits on one thread (in order) and on four, for
+ * bundles of 1 to 64 splits. The session is the JVM stand-in that writes
+ * each file to a temp directory and fsyncs it, so the numbers include
+ * real file system writes. The speedup for a split count is the
+ * threads=1 time over the threads=4 time.
+ *
+ *   tests/run.sh bench SessionWriterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionWriterBenchmark {
+
+    /** Uncompressed bytes per split APK. */
+    private static final int SPLIT_SIZE = 1024 * 1024;
+
+    @Param({"1", "4", "16", "64"})
+    public int splits;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    /** Whether the split APKs are STORED in the XAPK (written by range) or DEFLATED (inflated). */
+    @Param({"false", "true"})
+    public boolean stored;
+
+    private File xapk;
+    private File sessionDir;
+    private RandomAccessFile raf;
+    private ZipArchive zip;
+    private SplitBundle bundle;
+    private PackageInstaller.Session session;
+    private final byte[] buffer = new byte[65536];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] base = Fixtures.manifest("base");
+        byte[] config = Fixtures.manifest("config_arm64");
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("base.apk", apk(base, 0));
+        for (int i = 1; i < splits; i++) {
+            // Same length as "config.arm64_v8a", so the manifest can be patched in place
+            String name = String.format(Locale.ROOT, "config.split_%03d", i);
+            entries.put(name + ".apk", apk(Fixtures.replaceString(config, "config.arm64_v8a", name), i));
+        }
+        xapk = Fixtures.zip(File.createTempFile("bundle", ".xapk"), entries, stored);
+        raf = new RandomAccessFile(xapk, "r");
+        FileChannel channel = raf.getChannel();
+        zip = ZipArchive.open(channel);
+        bundle = SplitBundle.read(zip);
+
+        sessionDir = File.createTempFile("session", "");
+        sessionDir.delete();
+        sessionDir.mkdir();
+        session = new PackageInstaller.Session(sessionDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        raf.close();
+        xapk.delete();
+        File[] written = sessionDir.listFiles();
+        if (written != null) {
+            for (File file : written) {
+                file.delete();
+            }
+        }
+        sessionDir.delete();
+    }
+
+    @Benchmark
+    public int writeSplits() throws IOException {
+        return SessionWriter.writeSplits(session, zip, bundle, buffer, null, threads);
+    }
+
+    /** An APK with manifest and SPLIT_SIZE bytes of compressible code. */
+    private static byte[] apk(byte[] manifest, int seed) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("AndroidManifest.xml", manifest);
+        entries.put("classes.dex", Fixtures.bytes(SPLIT_SIZE, seed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(SPLIT_SIZE + 4096);
+        Fixtures.writeZip(out, entries, true);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.deviceownerapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+/**
+ * ZipArchive against java.util.zip.ZipFile on synthetic archives:
+ * opening plus one lookup (what an install does per archive), 100
+ * lookups on an open archive, and inflating one entry.
+ *
+ *   tests/run.sh bench ZipArchiveBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZipArchiveBenchmark {
+
+    private static final int LOOKUPS = 100;
+
+    /**
+     * An archive on disk and nothing else open on it: an open ZipFile would
+     * let the JDK reuse its parsed central directory for the next one.
+     */
+    @State(Scope.Benchmark)
+    public static class Archive {
+        @Param({"100", "5000", "70000"})
+        public int entries;
+
+        File file;
+        RandomAccessFile raf;
+        FileChannel channel;
+        String lastName;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = File.createTempFile("synthetic", ".zip");
+            Fixtures.writeSynthetic(file, entries);
+            raf = new RandomAccessFile(file, "r");
+            channel = raf.getChannel();
+            lastName = name(entries - 1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            raf.close();
+            file.delete();
+        }
+    }
+
+    /** The same archive already opened both ways. */
+    @State(Scope.Benchmark)
+    public static class Opened {
+        ZipArchive archive;
+        ZipFile zipFile;
+        String[] names;
+
+        @Setup(Level.Trial)
+        public void setUp(Archive archive) throws IOException {
+            this.archive = ZipArchive.open(archive.channel);
+            zipFile = new ZipFile(archive.file);
+            Random random = new Random(1);
+            names = new String[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                names[i] = name(random.nextInt(archive.entries));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            zipFile.close();
+        }
+    }
+
+    private static String name(int index) {
+        return "dir" + (index % 8) + "/entry-" + index + ".bin";
+    }
+
+    @Benchmark
+    public Object openAndLookupZipArchive(Archive archive) throws IOException {
+        return ZipArchive.open(archive.channel).getEntry(archive.lastName);
+    }
+
+    @Benchmark
+    public Object openAndLookupZipFile(Archive archive) throws IOException {
+        try (ZipFile zip = new ZipFile(archive.file)) {
+            return zip.getEntry(archive.lastName);
+        }
+    }
+
+    @Benchmark
+    public void lookupZipArchive(Opened opened, Blackhole bh) {
+        for (String name : opened.names) {
+            bh.consume(opened.archive.getEntry(name));
+        }
+    }
+
+    @Benchmark
+    public void lookupZipFile(Opened opened, Blackhole bh) {
+        for (String name : opened.names) {
+            bh.consume(opened.zipFile.getEntry(name));
+        }
+    }
+
+    @Benchmark
+    public int readEntryZipArchive(Archive archive, Opened opened) throws IOException {
+        ZipArchive zip = opened.archive;
+        try (InputStream in = zip.getInputStream(zip.getEntry(archive.lastName))) {
+            return drain(in);
+        }
+    }
+
+    @Benchmark
+    public int readEntryZipFile(Archive archive, Opened opened) throws IOException {
+        ZipFile zip = opened.zipFile;
+        try (InputStream in = zip.getInputStream(zip.getEntry(archive.lastName))) {
+            return drain(in);
+        }
+    }
+
+    private static int drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,23 @@
+#!/usr/bin/env bash
+#
+# Compile the manifests in src/ with aapt2 and keep the binary
+# AndroidManifest.xml of each as <name>.axml. The .axml files are checked
+# in; rerun this only when a source manifest changes.
+#
+#   AAPT2=/path/to/aapt2 ANDROID_JAR=/path/to/android.jar ./make.sh
+
+set -e
+cd "$(dirname "$0")"
+
+: "${AAPT2:=aapt2}"
+: "${ANDROID_JAR:?set ANDROID_JAR to an android.jar for -I}"
+
+TMP="$(mktemp -d)"
+trap 'rm -rf "$TMP"' EXIT
+
+for xml in src/*.xml; do
+    name="$(basename "$xml" .xml)"
+    "$AAPT2" link --manifest "$xml" -I "$ANDROID_JAR" -o "$TMP/$name.apk"
+    unzip -p "$TMP/$name.apk" AndroidManifest.xml > "$name.axml"
+    echo "$name.axml"
+done
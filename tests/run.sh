@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+#
+# JVM unit tests and JMH benchmarks for the parts of the app that don't
+# need a device: archive and manifest parsing, binder transaction layouts,
+# the copy pipeline.
+#
+#   tests/run.sh                 run every *Test in tests/src
+#   tests/run.sh FooTest         run one test class
+#   tests/run.sh bench [args]    run the JMH benchmarks in tests/bench
+#
+# tests/shadows holds plain-Java stand-ins for the few android.* classes
+# that code touches; no android.jar is on the classpath. They are all
+# compiled up front, since the *$Stub classes are only looked up by name.
+# JUnit and JMH are downloaded from Maven Central into $TEST_LIBS on first
+# use.
+
+set -e
+cd "$(dirname "$0")/.."
+
+TEST_LIBS="${TEST_LIBS:-$HOME/.cache/deviceownerapp/test-libs}"
+MAVEN="https://repo1.maven.org/maven2"
+OUT="build/tests"
+
+fetch() {
+    # fetch <group path> <artifact> <version>
+    local jar="$TEST_LIBS/$2-$3.jar"
+    if [ ! -f "$jar" ]; then
+        mkdir -p "$TEST_LIBS"
+        echo "fetching $2-$3.jar..." >&2
+        curl -sSfL -o "$jar.tmp" "$MAVEN/$1/$2/$3/$2-$3.jar"
+        mv "$jar.tmp" "$jar"
+    fi
+    printf '%s' "$jar"
+}
+
+JUNIT="$(fetch junit junit 4.13.2):$(fetch org/hamcrest hamcrest-core 1.3)"
+SOURCEPATH="src:tests/shadows:tests/src"
+
+rm -rf "$OUT"
+mkdir -p "$OUT/classes"
+
+if [ "$1" = "bench" ]; then
+    shift
+    JMH="$(fetch org/openjdk/jmh jmh-core 1.37):$(fetch org/openjdk/jmh jmh-generator-annprocess 1.37)"
+    JMH="$JMH:$(fetch net/sf/jopt-simple jopt-simple 5.0.4):$(fetch org/apache/commons commons-math3 3.6.1)"
+    echo "compiling benchmarks..."
+    javac -nowarn -encoding UTF-8 -d "$OUT/classes" -cp "$JMH" \
+        -sourcepath "$SOURCEPATH:tests/bench" $(find tests/shadows tests/bench -name "*.java")
+    java -cp "$OUT/classes:$JMH" -Dfixtures=tests/fixtures org.openjdk.jmh.Main "$@"
+    exit
+fi
+
+echo "compiling tests..."
+javac -nowarn -encoding UTF-8 -d "$OUT/classes" -cp "$JUNIT" \
+    -sourcepath "$SOURCEPATH" $(find tests/shadows tests/src -name "*.java")
+
+if [ $# -gt 0 ]; then
+    CLASSES="$(printf 'com.example.deviceownerapp.%s ' "$@")"
+else
+    CLASSES="$(cd tests/src && find . -name "*Test.java" | sed 's|^\./||; s|\.java$||; s|/|.|g' | sort)"
+fi
+java -cp "$OUT/classes:$JUNIT" -Dfixtures=tests/fixtures org.junit.runner.JUnitCore $CLASSES
@@ -0,0 +1,15 @@
+package android.app.admin;
+
+/**
+ * Stand-in for the hidden AIDL interface. TransactionTable only reads the
+ * Stub's TRANSACTION_* fields; the values are arbitrary but distinct.
+ */
+public interface IDevicePolicyManager {
+
+    abstract class Stub {
+        static final int TRANSACTION_setApplicationHidden = 141;
+        static final int TRANSACTION_isApplicationHidden = 142;
+        static final int TRANSACTION_setPermissionGrantState = 221;
+        static final int TRANSACTION_getPermissionGrantState = 222;
+    }
+}
@@ -0,0 +1,48 @@
+package android.content;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * JVM stand-in, parcelled as two strings like the real one.
+ */
+public final class ComponentName implements Parcelable {
+
+    private final String packageName;
+    private final String className;
+
+    public ComponentName(String packageName, String className) {
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeString(packageName);
+        out.writeString(className);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ComponentName && ((ComponentName) o).packageName.equals(packageName)
+                && ((ComponentName) o).className.equals(className);
+    }
+
+    @Override
+    public int hashCode() {
+        return packageName.hashCode() * 31 + className.hashCode();
+    }
+}
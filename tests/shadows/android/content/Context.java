@@ -0,0 +1,13 @@
+package android.content;
+
+/**
+ * JVM stand-in: only what InstallDigests uses. Tests never pass a real one.
+ */
+public abstract class Context {
+
+    public static final int MODE_PRIVATE = 0;
+
+    public abstract Context getApplicationContext();
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+}
@@ -0,0 +1,27 @@
+package android.content;
+
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * JVM stand-in, parcelled as its target binder like the real one.
+ */
+public class IntentSender implements Parcelable {
+
+    private final IBinder target;
+
+    public IntentSender(IBinder target) {
+        this.target = target;
+    }
+
+    @Override
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeStrongBinder(target);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+}
@@ -0,0 +1,23 @@
+package android.content;
+
+import java.util.Map;
+
+/**
+ * JVM stand-in: only what InstallDigests uses.
+ */
+public interface SharedPreferences {
+
+    interface Editor {
+        Editor putString(String key, String value);
+
+        Editor remove(String key);
+
+        void apply();
+    }
+
+    String getString(String key, String defValue);
+
+    Map<String, ?> getAll();
+
+    Editor edit();
+}
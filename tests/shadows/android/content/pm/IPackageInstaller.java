@@ -0,0 +1,13 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the hidden AIDL interface; see IDevicePolicyManager.
+ */
+public interface IPackageInstaller {
+
+    abstract class Stub {
+        static final int TRANSACTION_createSession = 11;
+        static final int TRANSACTION_abandonSession = 14;
+        static final int TRANSACTION_openSession = 15;
+    }
+}
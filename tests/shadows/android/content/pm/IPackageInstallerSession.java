@@ -0,0 +1,13 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the hidden AIDL interface; see IDevicePolicyManager.
+ * TRANSACTION_openWrite is left out on purpose: a Stub that loads but
+ * lacks a field, as after an AIDL method is renamed.
+ */
+public interface IPackageInstallerSession {
+
+    abstract class Stub {
+        static final int TRANSACTION_commit = 28;
+    }
+}
@@ -0,0 +1,34 @@
+package android.content.pm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JVM stand-in: a Session writes each named file into a directory, so
+ * SessionWriter can be run and timed against a real file system.
+ */
+public class PackageInstaller {
+
+    public static class Session implements Closeable {
+        private final File dir;
+
+        public Session(File dir) {
+            this.dir = dir;
+        }
+
+        public OutputStream openWrite(String name, long offsetBytes, long lengthBytes) throws IOException {
+            return new FileOutputStream(new File(dir, name));
+        }
+
+        public void fsync(OutputStream out) throws IOException {
+            ((FileOutputStream) out).getFD().sync();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * JVM stand-in: a fixed recent release.
+ */
+public class Build {
+
+    public static final String[] SUPPORTED_ABIS = {"arm64-v8a", "armeabi-v7a", "armeabi"};
+
+    public static class VERSION {
+        public static final int SDK_INT = 34;
+    }
+}
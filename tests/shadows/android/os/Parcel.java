@@ -0,0 +1,110 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JVM stand-in for Parcel that keeps the written values as a list instead
+ * of bytes, so tests can compare what was marshalled in order. Reads
+ * consume the values front to back, as on a device.
+ */
+public final class Parcel {
+
+    // Exception codes from Parcel.java
+    public static final int EX_SECURITY = -1;
+    public static final int EX_ILLEGAL_STATE = -5;
+
+    /** What writeInterfaceToken() records. */
+    public static final class InterfaceToken {
+        public final String descriptor;
+
+        public InterfaceToken(String descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InterfaceToken && ((InterfaceToken) o).descriptor.equals(descriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            return descriptor.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "token(" + descriptor + ")";
+        }
+    }
+
+    private final List<Object> values = new ArrayList<>();
+    private int readPosition;
+    private boolean recycled;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        recycled = true;
+    }
+
+    public boolean isRecycled() {
+        return recycled;
+    }
+
+    /** Everything written so far, in order. */
+    public List<Object> values() {
+        return Collections.unmodifiableList(new ArrayList<>(values));
+    }
+
+    public void writeInterfaceToken(String descriptor) {
+        values.add(new InterfaceToken(descriptor));
+    }
+
+    public void writeInt(int value) {
+        values.add(value);
+    }
+
+    public void writeString(String value) {
+        values.add(value);
+    }
+
+    public void writeStrongBinder(IBinder binder) {
+        values.add(binder);
+    }
+
+    public void writeNoException() {
+        writeInt(0);
+    }
+
+    public void writeException(Exception e) {
+        writeInt(e instanceof SecurityException ? EX_SECURITY : EX_ILLEGAL_STATE);
+        writeString(e.getMessage());
+    }
+
+    public int readInt() {
+        return (Integer) values.get(readPosition++);
+    }
+
+    public String readString() {
+        return (String) values.get(readPosition++);
+    }
+
+    public void readException() {
+        int code = readInt();
+        if (code == 0) {
+            return;
+        }
+        String message = readString();
+        if (code == EX_SECURITY) {
+            throw new SecurityException(message);
+        }
+        throw new IllegalStateException(message);
+    }
+}
@@ -0,0 +1,8 @@
+package android.os;
+
+public interface Parcelable {
+
+    void writeToParcel(Parcel dest, int flags);
+
+    int describeContents();
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * JVM stand-in: sections are not recorded.
+ */
+public final class Trace {
+
+    private Trace() {
+    }
+
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.deviceownerapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * BinaryManifest on manifests compiled by aapt2 (tests/fixtures/manifests).
+ */
+public class BinaryManifestTest {
+
+    @Test
+    public void base() throws IOException {
+        BinaryManifest manifest = BinaryManifest.parse(Fixtures.manifest("base"));
+        assertEquals("com.example.app", manifest.packageName);
+        assertEquals(42, manifest.versionCode);
+        assertTrue(manifest.isBase());
+        assertNull(manifest.splitName);
+        assertFalse(manifest.isFeatureSplit);
+        assertNull(manifest.configForSplit);
+        assertEquals(Collections.emptyList(), manifest.usesSplits);
+    }
+
+    @Test
+    public void configSplitOfBase() throws IOException {
+        BinaryManifest manifest = BinaryManifest.parse(Fixtures.manifest("config_arm64"));
+        assertEquals("com.example.app", manifest.packageName);
+        assertEquals(42, manifest.versionCode);
+        assertFalse(manifest.isBase());
+        assertEquals("config.arm64_v8a", manifest.splitName);
+        assertFalse(manifest.isFeatureSplit);
+        assertNull(manifest.configForSplit);
+    }
+
+    @Test
+    public void featureSplitWithUsesSplit() throws IOException {
+        BinaryManifest manifest = BinaryManifest.parse(Fixtures.manifest("feature_a"));
+        assertEquals("feature_a", manifest.splitName);
+        assertTrue(manifest.isFeatureSplit);
+        assertEquals(Arrays.asList("feature_b"), manifest.usesSplits);
+    }
+
+    @Test
+    public void configSplitOfFeature() throws IOException {
+        BinaryManifest manifest = BinaryManifest.parse(Fixtures.manifest("feature_a_config"));
+        assertEquals("feature_a.config.xxhdpi", manifest.splitName);
+        assertEquals("feature_a", manifest.configForSplit);
+        assertFalse(manifest.isFeatureSplit);
+    }
+
+    @Test
+    public void versionCodeMajorIsTheHighWord() throws IOException {
+        BinaryManifest manifest = BinaryManifest.parse(Fixtures.manifest("version_major"));
+        assertEquals((1L << 32) | 7, manifest.versionCode);
+    }
+
+    @Test
+    public void readMatchesParse() throws IOException {
+        byte[] data = Fixtures.manifest("feature_a");
+        BinaryManifest parsed = BinaryManifest.parse(data);
+        BinaryManifest read = BinaryManifest.read(new ByteArrayInputStream(data));
+        assertEquals(parsed.toString(), read.toString());
+        assertEquals(parsed.usesSplits, read.usesSplits);
+    }
+
+    @Test
+    public void corruptChunkSize() throws IOException {
+        byte[] data = Fixtures.manifest("base");
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        // The first chunk after the XML header is the string pool; make it overrun the file
+        int first = buf.getShort(2) & 0xFFFF;
+        buf.putInt(first + 4, data.length);
+        assertCorrupt(data, "Corrupt chunk");
+    }
+
+    @Test
+    public void chunkSmallerThanItsHeader() throws IOException {
+        byte[] data = Fixtures.manifest("base");
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int first = buf.getShort(2) & 0xFFFF;
+        buf.putInt(first + 4, 4);
+        assertCorrupt(data, "Corrupt chunk");
+    }
+
+    @Test
+    public void corruptStringOffset() throws IOException {
+        byte[] data = Fixtures.manifest("base");
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int pool = buf.getShort(2) & 0xFFFF;
+        int headerSize = buf.getShort(pool + 2) & 0xFFFF;
+        buf.putInt(pool + headerSize, 0x7fff0000); // First string offset, past the pool
+        assertCorrupt(data, "Corrupt string pool");
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        byte[] data = Fixtures.manifest("base");
+        assertCorrupt(Arrays.copyOf(data, data.length / 2), "Corrupt chunk");
+    }
+
+    @Test
+    public void textXmlIsRejected() throws IOException {
+        byte[] text = Files.readAllBytes(Fixtures.file("manifests/src/base.xml").toPath());
+        assertCorrupt(text, "Not a binary XML manifest");
+    }
+
+    @Test
+    public void oversizedStreamIsRejected() {
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return len;
+            }
+        };
+        try {
+            BinaryManifest.read(endless);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("too large"));
+        }
+    }
+
+    @Test
+    public void missingPackageIsRejected() throws IOException {
+        byte[] data = Fixtures.manifest("base");
+        // Rename the "package" attribute in the string pool so it is no longer found
+        byte[] name = "package".getBytes(StandardCharsets.UTF_16LE);
+        int at = indexOf(data, name);
+        if (at < 0) {
+            name = "package".getBytes(StandardCharsets.UTF_8);
+            at = indexOf(data, name);
+        }
+        assertTrue("package in string pool", at >= 0);
+        data[at] = 'q';
+        assertCorrupt(data, "no package name");
+    }
+
+    private static void assertCorrupt(byte[] data, String message) {
+        try {
+            BinaryManifest.parse(data);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(message));
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
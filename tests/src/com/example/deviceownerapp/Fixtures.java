@@ -0,0 +1,142 @@
+package com.example.deviceownerapp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Files under tests/fixtures, and small APK and XAPK archives built from
+ * them with java.util.zip.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static File file(String path) {
+        return new File(System.getProperty("fixtures", "tests/fixtures"), path);
+    }
+
+    /** A binary AndroidManifest.xml compiled by tests/fixtures/manifests/make.sh. */
+    static byte[] manifest(String name) throws IOException {
+        return Files.readAllBytes(file("manifests/" + name + ".axml").toPath());
+    }
+
+    /** An APK holding manifest and a little filler, all DEFLATED. */
+    static byte[] apk(byte[] manifest) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("AndroidManifest.xml", manifest);
+        entries.put("resources.arsc", new byte[4096]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeZip(out, entries, false);
+        return out.toByteArray();
+    }
+
+    static byte[] apkFor(String manifestName) throws IOException {
+        return apk(manifest(manifestName));
+    }
+
+    /**
+     * A copy of a binary manifest with one string replaced by another of
+     * the same length, e.g. to give a split a new name.
+     */
+    static byte[] replaceString(byte[] manifest, String from, String to) {
+        if (from.length() != to.length()) {
+            throw new IllegalArgumentException("Strings must have the same length");
+        }
+        byte[] copy = manifest.clone();
+        // aapt2 may write the pool as UTF-8 or UTF-16
+        for (Charset charset : new Charset[] {
+                StandardCharsets.UTF_8, StandardCharsets.UTF_16LE}) {
+            byte[] pattern = from.getBytes(charset);
+            byte[] replacement = to.getBytes(charset);
+            for (int i = 0; i + pattern.length <= copy.length; i++) {
+                if (regionMatches(copy, i, pattern)) {
+                    System.arraycopy(replacement, 0, copy, i, replacement.length);
+                    return copy;
+                }
+            }
+        }
+        throw new IllegalArgumentException(from + " not in manifest");
+    }
+
+    private static boolean regionMatches(byte[] data, int offset, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (data[offset + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write entries to a new ZIP file, every entry STORED or every entry DEFLATED. */
+    static File zip(File file, Map<String, byte[]> entries, boolean stored) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            writeZip(out, entries, stored);
+        }
+        return file;
+    }
+
+    static void writeZip(OutputStream out, Map<String, byte[]> entries, boolean stored) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            byte[] data = entry.getValue();
+            ZipEntry zipEntry = new ZipEntry(entry.getKey());
+            if (stored) {
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(data.length);
+                zipEntry.setCompressedSize(data.length);
+                zipEntry.setCrc(crc.getValue());
+            }
+            zip.putNextEntry(zipEntry);
+            zip.write(data);
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /** count tiny entries in eight directories; every fourth one is STORED. */
+    static void writeSynthetic(File file, int count) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (int i = 0; i < count; i++) {
+                byte[] data = ("entry " + i + " ").getBytes(StandardCharsets.UTF_8);
+                ZipEntry entry = new ZipEntry("dir" + (i % 8) + "/entry-" + i + ".bin");
+                if (i % 4 == 0) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCompressedSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+    }
+
+    /** size bytes from a small alphabet: compressible, but not trivially. */
+    static byte[] bytes(int size, int seed) {
+        byte[] data = new byte[size];
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+}
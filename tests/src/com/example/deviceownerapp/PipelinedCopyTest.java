@@ -0,0 +1,277 @@
+package com.example.deviceownerapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * PipelinedCopy with slow, short-reading and failing streams: the bytes
+ * arrive intact, the reader stays at most RING_SIZE buffers ahead, errors
+ * from either side are rethrown, and no read is still running once
+ * copy() returns or throws.
+ */
+public class PipelinedCopyTest {
+
+    private static final int BUFFER = 1024;
+
+    @Test
+    public void copiesEverySize() throws IOException {
+        int[] sizes = {0, 1, BUFFER - 1, BUFFER, BUFFER + 1, 37 * BUFFER + 5};
+        for (int size : sizes) {
+            byte[] data = Fixtures.bytes(size, size);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(size, PipelinedCopy.copy(new ByteArrayInputStream(data), out, new byte[BUFFER]));
+            assertArrayEquals("size " + size, data, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void shortReads() throws IOException {
+        byte[] data = Fixtures.bytes(10 * BUFFER + 17, 1);
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, PipelinedCopy.copy(trickle, out, new byte[BUFFER]));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void slowReader() throws IOException {
+        byte[] data = Fixtures.bytes(8 * BUFFER, 2);
+        TrackingInput in = new TrackingInput(data, 5, -1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, PipelinedCopy.copy(in, out, new byte[BUFFER]));
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals(0, in.active.get());
+    }
+
+    @Test
+    public void slowWriterBoundsTheReadAhead() throws IOException {
+        byte[] data = Fixtures.bytes(40 * BUFFER, 3);
+        final TrackingInput in = new TrackingInput(data, 0, -1);
+        final AtomicInteger maxAhead = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+        OutputStream slow = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                maxAhead.set(Math.max(maxAhead.get(), in.reads.get() - writes.get()));
+                sleep(5);
+                super.write(b, off, len);
+                writes.incrementAndGet();
+            }
+        };
+        assertEquals(data.length, PipelinedCopy.copy(in, slow, new byte[BUFFER]));
+        // Every buffer in the ring can be filled ahead of the writer, and no more;
+        // plus the end-of-stream read, which needs a free buffer too
+        assertTrue("read ahead " + maxAhead.get(), maxAhead.get() <= PipelinedCopy.RING_SIZE);
+        assertTrue("reader never got ahead", maxAhead.get() >= 2);
+    }
+
+    @Test
+    public void readAndWriteOverlap() throws Exception {
+        // The first write blocks until the reader has started its second
+        // read; a copy that didn't overlap them would wait out the timeout
+        byte[] data = Fixtures.bytes(4 * BUFFER, 4);
+        final CountDownLatch secondRead = new CountDownLatch(1);
+        final TrackingInput in = new TrackingInput(data, 0, -1) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (reads.get() == 1) {
+                    secondRead.countDown();
+                }
+                return super.read(b, off, len);
+            }
+        };
+        final AtomicReference<Boolean> overlapped = new AtomicReference<>();
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (overlapped.get() == null) {
+                    try {
+                        overlapped.set(secondRead.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                super.write(b, off, len);
+            }
+        };
+        PipelinedCopy.copy(in, out, new byte[BUFFER]);
+        assertEquals(Boolean.TRUE, overlapped.get());
+    }
+
+    @Test
+    public void failingWriterStopsTheReader() throws IOException {
+        byte[] data = Fixtures.bytes(1000 * BUFFER, 5);
+        TrackingInput in = new TrackingInput(data, 1, -1);
+        final IOException failure = new IOException("disk full");
+        final AtomicInteger writes = new AtomicInteger();
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (writes.incrementAndGet() == 3) {
+                    throw failure;
+                }
+            }
+        };
+        try {
+            PipelinedCopy.copy(in, out, new byte[BUFFER]);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+        // copy() waited for the read in progress, so the caller may close in now
+        assertEquals(0, in.active.get());
+        int readsAtReturn = in.reads.get();
+        sleep(300);
+        assertEquals("reader kept going after abort", readsAtReturn, in.reads.get());
+        assertTrue(readsAtReturn < 20);
+    }
+
+    @Test
+    public void failingReaderIsRethrown() throws IOException {
+        byte[] data = Fixtures.bytes(20 * BUFFER, 6);
+        TrackingInput in = new TrackingInput(data, 0, 5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            PipelinedCopy.copy(in, out, new byte[BUFFER]);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertSame(in.failure, e);
+        }
+        // Everything read before the failure was written, in order
+        assertArrayEquals(Arrays.copyOf(data, 5 * BUFFER), out.toByteArray());
+    }
+
+    @Test
+    public void runtimeExceptionInReaderBecomesIOException() {
+        final IllegalStateException bug = new IllegalStateException("inflater bug");
+        InputStream in = new InputStream() {
+            @Override
+            public int read() {
+                throw bug;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                throw bug;
+            }
+        };
+        try {
+            PipelinedCopy.copy(in, new ByteArrayOutputStream(), new byte[BUFFER]);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertSame(bug, e.getCause());
+        }
+    }
+
+    @Test
+    public void interruptedWriterAbortsAndKeepsTheFlag() throws Exception {
+        byte[] data = Fixtures.bytes(1000 * BUFFER, 7);
+        final TrackingInput in = new TrackingInput(data, 20, -1);
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        final AtomicReference<Boolean> flag = new AtomicReference<>();
+        Thread copier = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    PipelinedCopy.copy(in, new ByteArrayOutputStream(), new byte[BUFFER]);
+                } catch (Throwable e) {
+                    thrown.set(e);
+                }
+                flag.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        copier.start();
+        sleep(100);
+        copier.interrupt();
+        copier.join(5000);
+
+        assertTrue(thrown.get() instanceof InterruptedIOException);
+        assertEquals(Boolean.TRUE, flag.get());
+        assertEquals(0, in.active.get());
+    }
+
+    /**
+     * Serves data with an optional delay per read, counting reads and
+     * reads in progress, and optionally failing on one read.
+     */
+    private static class TrackingInput extends InputStream {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final IOException failure = new IOException("read failed");
+        private final byte[] data;
+        private final long delayMs;
+        private final int failAt;
+        private int position;
+
+        TrackingInput(byte[] data, long delayMs, int failAt) {
+            this.data = data;
+            this.delayMs = delayMs;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            active.incrementAndGet();
+            try {
+                if (reads.get() == failAt) {
+                    throw failure;
+                }
+                sleep(delayMs);
+                int n = Math.min(len, data.length - position);
+                if (n <= 0) {
+                    return -1;
+                }
+                System.arraycopy(data, position, b, off, n);
+                position += n;
+                return n;
+            } finally {
+                reads.incrementAndGet();
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
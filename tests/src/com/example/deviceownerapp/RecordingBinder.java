@@ -0,0 +1,87 @@
+package com.example.deviceownerapp;
+
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fake IBinder that records every transaction and answers with a canned
+ * reply: a result value, an exception in the reply, "not handled", or a
+ * RemoteException from the transport.
+ */
+class RecordingBinder implements IBinder {
+
+    static class Call {
+        final int code;
+        final List<Object> data;
+        final int flags;
+        final Parcel dataParcel;
+        final Parcel replyParcel;
+
+        Call(int code, Parcel data, Parcel reply, int flags) {
+            this.code = code;
+            this.data = data.values();
+            this.flags = flags;
+            this.dataParcel = data;
+            this.replyParcel = reply;
+        }
+    }
+
+    final List<Call> calls = new ArrayList<>();
+
+    private Integer result;
+    private Exception replyException;
+    private boolean handled = true;
+    private RemoteException transportError;
+
+    /** Reply with no exception followed by an int (booleans as 0/1). */
+    RecordingBinder replyInt(int value) {
+        this.result = value;
+        return this;
+    }
+
+    RecordingBinder replyException(Exception e) {
+        this.replyException = e;
+        return this;
+    }
+
+    RecordingBinder notHandled() {
+        this.handled = false;
+        return this;
+    }
+
+    RecordingBinder failTransport(RemoteException e) {
+        this.transportError = e;
+        return this;
+    }
+
+    @Override
+    public boolean transact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        calls.add(new Call(code, data, reply, flags));
+        if (transportError != null) {
+            throw transportError;
+        }
+        if (!handled) {
+            return false;
+        }
+        if (replyException != null) {
+            reply.writeException(replyException);
+        } else {
+            reply.writeNoException();
+            if (result != null) {
+                reply.writeInt(result);
+            }
+        }
+        return true;
+    }
+
+    Call onlyCall() {
+        if (calls.size() != 1) {
+            throw new AssertionError("Expected exactly one transact, got " + calls.size());
+        }
+        return calls.get(0);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.deviceownerapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * SplitBundle.read on XAPKs built from the aapt2 fixture manifests, with
+ * the inner APKs both STORED (read in place) and DEFLATED (scanned).
+ */
+public class SplitBundleTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void completeBundle() throws IOException {
+        for (boolean stored : new boolean[] {true, false}) {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            entries.put("manifest.json", "{}".getBytes("UTF-8"));
+            entries.put("com.example.app.apk", Fixtures.apkFor("base"));
+            entries.put("config.arm64_v8a.apk", Fixtures.apkFor("config_arm64"));
+            entries.put("feature_a.apk", Fixtures.apkFor("feature_a"));
+            entries.put("feature_a.config.xxhdpi.apk", Fixtures.apkFor("feature_a_config"));
+            entries.put("feature_b.apk", Fixtures.apkFor("feature_b"));
+
+            SplitBundle bundle = read(entries, stored);
+            assertEquals("com.example.app", bundle.packageName);
+            assertEquals(42, bundle.versionCode);
+            List<String> names = new ArrayList<>();
+            for (SplitBundle.Split split : bundle.splits) {
+                names.add(split.getSessionName());
+            }
+            assertEquals(Arrays.asList("base.apk", "split_config.arm64_v8a.apk", "split_feature_a.apk",
+                    "split_feature_a.config.xxhdpi.apk", "split_feature_b.apk"), names);
+        }
+    }
+
+    @Test
+    public void noApks() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("manifest.json", "{}".getBytes("UTF-8"));
+        assertRejected(entries, "No .apk files");
+    }
+
+    @Test
+    public void twoBases() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.apk", Fixtures.apkFor("base"));
+        entries.put("b.apk", Fixtures.apkFor("base"));
+        assertRejected(entries, "Two base APKs: a.apk and b.apk");
+    }
+
+    @Test
+    public void noBase() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("config.arm64_v8a.apk", Fixtures.apkFor("config_arm64"));
+        assertRejected(entries, "no base APK");
+    }
+
+    @Test
+    public void otherPackage() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("base.apk", Fixtures.apkFor("other_package"));
+        entries.put("config.arm64_v8a.apk", Fixtures.apkFor("config_arm64"));
+        assertRejected(entries, "config.arm64_v8a.apk is for com.example.app, not com.example.other");
+    }
+
+    @Test
+    public void otherVersionCode() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("base.apk", Fixtures.apkFor("base"));
+        entries.put("config.en.apk", Fixtures.apkFor("config_en_v43"));
+        assertRejected(entries, "config.en.apk has versionCode 43, base has 42");
+    }
+
+    @Test
+    public void duplicateSplit() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("base.apk", Fixtures.apkFor("base"));
+        entries.put("arm64.apk", Fixtures.apkFor("config_arm64"));
+        entries.put("splits/arm64.apk", Fixtures.apkFor("config_arm64"));
+        assertRejected(entries, "Split config.arm64_v8a appears twice");
+    }
+
+    @Test
+    public void missingUsesSplit() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("base.apk", Fixtures.apkFor("base"));
+        entries.put("feature_a.apk", Fixtures.apkFor("feature_a"));
+        assertRejected(entries, "feature_a.apk needs missing split feature_b");
+    }
+
+    @Test
+    public void corruptManifestNamesTheApk() throws IOException {
+        byte[] corrupt = Fixtures.manifest("feature_b");
+        corrupt[12] = (byte) 0xff; // String pool chunk size, low byte
+        corrupt[13] = (byte) 0xff;
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("base.apk", Fixtures.apkFor("base"));
+        entries.put("feature_b.apk", Fixtures.apk(corrupt));
+        assertRejected(entries, "feature_b.apk: Corrupt chunk");
+    }
+
+    @Test
+    public void apkWithoutManifest() throws IOException {
+        Map<String, byte[]> apk = new LinkedHashMap<>();
+        apk.put("classes.dex", new byte[16]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Fixtures.writeZip(out, apk, false);
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("base.apk", out.toByteArray());
+        assertRejected(entries, "base.apk: No AndroidManifest.xml");
+    }
+
+    private SplitBundle read(Map<String, byte[]> entries, boolean stored) throws IOException {
+        File file = Fixtures.zip(temp.newFile(), entries, stored);
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return SplitBundle.read(ZipArchive.open(channel));
+        }
+    }
+
+    private void assertRejected(Map<String, byte[]> entries, String message) throws IOException {
+        for (boolean stored : new boolean[] {true, false}) {
+            try {
+                read(entries, stored);
+                fail("Expected IOException containing: " + message);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains(message));
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.deviceownerapp;
+
+import android.content.ComponentName;
+import android.content.IntentSender;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.RemoteException;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Every TransactionSpec sent through a RecordingBinder: the interface
+ * token, the argument order and the per-SDK trailing flags, and exactly
+ * one transact per call whatever the outcome.
+ */
+public class TransactionSpecTest {
+
+    private static final ComponentName ADMIN =
+            new ComponentName("com.rosan.dhizuku", "com.rosan.dhizuku.server.DhizukuDAReceiver");
+    private static final String CALLER = "com.rosan.dhizuku";
+    private static final String TARGET = "com.example.target";
+    private static final String PERMISSION = "android.permission.CAMERA";
+
+    /** Releases where a layout changes, and the ones around them. */
+    private static final int[] SDKS = {26, 27, 28, 29, 30, 31, 33, 34};
+
+    private static final Parcel.InterfaceToken DPM = new Parcel.InterfaceToken(TransactionSpec.DPM_DESCRIPTOR);
+    private static final Parcel.InterfaceToken SESSION =
+            new Parcel.InterfaceToken(TransactionSpec.SESSION_DESCRIPTOR);
+
+    /** Stands in for android.os.RemoteCallback, which parcels its binder. */
+    private static class FakeRemoteCallback implements Parcelable {
+        final IBinder binder = new RecordingBinder();
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            dest.writeStrongBinder(binder);
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+    }
+
+    @Test
+    public void setApplicationHiddenAddsParentFlagFromApi30() throws Exception {
+        for (int sdk : SDKS) {
+            RecordingBinder binder = new RecordingBinder().replyInt(1);
+            Object result = spec(TransactionTable.Code.DPM_SET_APPLICATION_HIDDEN, sdk)
+                    .transact(binder, ADMIN, CALLER, TARGET, true);
+
+            assertEquals(Boolean.TRUE, result);
+            List<Object> expected = dpmArgs(CALLER, TARGET, 1);
+            if (sdk >= 30) {
+                expected.add(0); // parent
+            }
+            assertCall(binder, TransactionTable.Code.DPM_SET_APPLICATION_HIDDEN, expected, sdk);
+        }
+    }
+
+    @Test
+    public void isApplicationHiddenAddsParentFlagFromApi30() throws Exception {
+        for (int sdk : SDKS) {
+            RecordingBinder binder = new RecordingBinder().replyInt(0);
+            Object result = spec(TransactionTable.Code.DPM_IS_APPLICATION_HIDDEN, sdk)
+                    .transact(binder, ADMIN, CALLER, TARGET);
+
+            assertEquals(Boolean.FALSE, result);
+            List<Object> expected = dpmArgs(CALLER, TARGET);
+            if (sdk >= 30) {
+                expected.add(0); // parent
+            }
+            assertCall(binder, TransactionTable.Code.DPM_IS_APPLICATION_HIDDEN, expected, sdk);
+        }
+    }
+
+    @Test
+    public void getPermissionGrantStateIsTheSameOnEverySdk() throws Exception {
+        for (int sdk : SDKS) {
+            RecordingBinder binder = new RecordingBinder().replyInt(2);
+            Object result = spec(TransactionTable.Code.DPM_GET_PERMISSION_GRANT_STATE, sdk)
+                    .transact(binder, ADMIN, CALLER, TARGET, PERMISSION);
+
+            assertEquals(2, result);
+            assertCall(binder, TransactionTable.Code.DPM_GET_PERMISSION_GRANT_STATE,
+                    dpmArgs(CALLER, TARGET, PERMISSION), sdk);
+        }
+    }
+
+    @Test
+    public void setPermissionGrantStateTakesRemoteCallbackFromApi29() throws Exception {
+        for (int sdk : SDKS) {
+            TransactionSpec spec = spec(TransactionTable.Code.DPM_SET_PERMISSION_GRANT_STATE, sdk);
+            if (sdk < 29) {
+                RecordingBinder binder = new RecordingBinder().replyInt(1);
+                assertEquals(TransactionSpec.Reply.BOOLEAN, spec.reply);
+                assertEquals(Boolean.TRUE, spec.transact(binder, ADMIN, CALLER, TARGET, PERMISSION, 1));
+                assertCall(binder, TransactionTable.Code.DPM_SET_PERMISSION_GRANT_STATE,
+                        dpmArgs(CALLER, TARGET, PERMISSION, 1), sdk);
+            } else {
+                RecordingBinder binder = new RecordingBinder();
+                FakeRemoteCallback callback = new FakeRemoteCallback();
+                assertEquals(TransactionSpec.Reply.VOID, spec.reply);
+                assertNull(spec.transact(binder, ADMIN, CALLER, TARGET, PERMISSION, 1, callback));
+                // Non-null callback: presence flag, then the callback's own parcel
+                assertCall(binder, TransactionTable.Code.DPM_SET_PERMISSION_GRANT_STATE,
+                        dpmArgs(CALLER, TARGET, PERMISSION, 1, 1, callback.binder), sdk);
+            }
+        }
+    }
+
+    @Test
+    public void sessionCommitAddsForTransferredFromApi28() throws Exception {
+        for (int sdk : SDKS) {
+            RecordingBinder binder = new RecordingBinder();
+            IBinder statusReceiver = new RecordingBinder();
+            Object result = spec(TransactionTable.Code.SESSION_COMMIT, sdk)
+                    .transact(binder, new IntentSender(statusReceiver));
+
+            assertNull(result);
+            List<Object> expected = new ArrayList<Object>(Arrays.asList(SESSION, 1, statusReceiver));
+            if (sdk >= 28) {
+                expected.add(0); // forTransferred
+            }
+            assertCall(binder, TransactionTable.Code.SESSION_COMMIT, expected, sdk);
+        }
+    }
+
+    @Test
+    public void callsWithoutLayoutHaveNoSpec() {
+        for (int sdk : SDKS) {
+            assertNull(TransactionSpec.forSdk(TransactionTable.Code.INSTALLER_CREATE_SESSION, sdk));
+            assertNull(TransactionSpec.forSdk(TransactionTable.Code.INSTALLER_ABANDON_SESSION, sdk));
+            assertNull(TransactionSpec.forSdk(TransactionTable.Code.INSTALLER_OPEN_SESSION, sdk));
+            assertNull(TransactionSpec.forSdk(TransactionTable.Code.SESSION_OPEN_WRITE, sdk));
+        }
+    }
+
+    @Test
+    public void deviceSpecsMatchForSdk() {
+        // The shadow Build.VERSION.SDK_INT decides what find() returns
+        for (TransactionTable.Code code : TransactionTable.Code.values()) {
+            TransactionSpec expected = TransactionSpec.forSdk(code, android.os.Build.VERSION.SDK_INT);
+            TransactionSpec found = TransactionSpec.find(code);
+            assertEquals(code.toString(), expected == null, found == null);
+            if (found != null) {
+                assertEquals(expected.getValueCount(), found.getValueCount());
+                assertSame(code, found.code);
+            }
+        }
+    }
+
+    @Test
+    public void unhandledTransactionIsNotRetried() throws Exception {
+        RecordingBinder binder = new RecordingBinder().notHandled();
+        try {
+            spec(TransactionTable.Code.DPM_IS_APPLICATION_HIDDEN, 34).transact(binder, ADMIN, CALLER, TARGET);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains(TransactionSpec.DPM_DESCRIPTOR));
+        }
+        binder.onlyCall();
+    }
+
+    @Test
+    public void transportFailureIsNotRetried() {
+        RemoteException dead = new RemoteException("binder died");
+        RecordingBinder binder = new RecordingBinder().failTransport(dead);
+        try {
+            spec(TransactionTable.Code.SESSION_COMMIT, 34).transact(binder, new IntentSender(new RecordingBinder()));
+            fail("Expected RemoteException");
+        } catch (RemoteException expected) {
+            assertSame(dead, expected);
+        }
+        binder.onlyCall();
+    }
+
+    @Test
+    public void exceptionInReplyIsRethrownWithoutRetry() throws Exception {
+        RecordingBinder binder = new RecordingBinder().replyException(new SecurityException("not the owner"));
+        try {
+            spec(TransactionTable.Code.DPM_SET_APPLICATION_HIDDEN, 34).transact(binder, ADMIN, CALLER, TARGET, true);
+            fail("Expected SecurityException");
+        } catch (SecurityException expected) {
+            assertEquals("not the owner", expected.getMessage());
+        }
+        binder.onlyCall();
+    }
+
+    @Test
+    public void wrongValueCountFailsBeforeTransact() throws Exception {
+        RecordingBinder binder = new RecordingBinder().replyInt(1);
+        try {
+            spec(TransactionTable.Code.DPM_SET_APPLICATION_HIDDEN, 34).transact(binder, ADMIN, CALLER, TARGET);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // Missing the hidden flag
+        }
+        assertTrue(binder.calls.isEmpty());
+    }
+
+    @Test
+    public void parcelsAreRecycled() throws Exception {
+        RecordingBinder binder = new RecordingBinder().replyInt(1);
+        spec(TransactionTable.Code.DPM_IS_APPLICATION_HIDDEN, 34).transact(binder, ADMIN, CALLER, TARGET);
+        RecordingBinder.Call call = binder.onlyCall();
+        assertTrue(call.dataParcel.isRecycled());
+        assertTrue(call.replyParcel.isRecycled());
+    }
+
+    // ======== Helpers ========
+
+    private static TransactionSpec spec(TransactionTable.Code code, int sdk) {
+        TransactionSpec spec = TransactionSpec.forSdk(code, sdk);
+        assertNotNull(code + " on API " + sdk, spec);
+        return spec;
+    }
+
+    /** DPM token, non-null admin and the values that follow it. */
+    private static List<Object> dpmArgs(Object... rest) {
+        List<Object> args = new ArrayList<Object>(Arrays.asList(DPM, 1, ADMIN.getPackageName(), ADMIN.getClassName()));
+        args.addAll(Arrays.asList(rest));
+        return args;
+    }
+
+    private static void assertCall(RecordingBinder binder, TransactionTable.Code code, List<Object> expected, int sdk) {
+        RecordingBinder.Call call = binder.onlyCall();
+        assertEquals(code + " code on API " + sdk, TransactionTable.require(code), call.code);
+        assertEquals(code + " flags on API " + sdk, 0, call.flags);
+        assertEquals(code + " arguments on API " + sdk, expected, call.data);
+        assertFalse(call.dataParcel == call.replyParcel);
+    }
+}
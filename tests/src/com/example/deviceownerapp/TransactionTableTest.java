@@ -0,0 +1,119 @@
+package com.example.deviceownerapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * TransactionTable.resolve against the *$Stub stand-ins in tests/shadows:
+ * every Source, and require() on a code that resolves to MISSING.
+ */
+public class TransactionTableTest {
+
+    private static final int CODES = TransactionTable.Code.values().length;
+
+    /** Hides the *$Stub classes, as a hidden-API-blocked runtime does. */
+    private static final ClassLoader NO_STUBS = new ClassLoader(TransactionTableTest.class.getClassLoader()) {
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.endsWith("$Stub")) {
+                throw new ClassNotFoundException(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+    };
+
+    @Test
+    public void stubFieldsComeFromReflection() {
+        int[] codes = new int[CODES];
+        TransactionTable.Source[] sources = new TransactionTable.Source[CODES];
+        TransactionTable.resolve(TransactionTableTest.class.getClassLoader(), 34, codes, sources);
+
+        assertCode(141, TransactionTable.Source.REFLECTION, TransactionTable.Code.DPM_SET_APPLICATION_HIDDEN,
+                codes, sources);
+        assertCode(142, TransactionTable.Source.REFLECTION, TransactionTable.Code.DPM_IS_APPLICATION_HIDDEN,
+                codes, sources);
+        assertCode(221, TransactionTable.Source.REFLECTION, TransactionTable.Code.DPM_SET_PERMISSION_GRANT_STATE,
+                codes, sources);
+        assertCode(222, TransactionTable.Source.REFLECTION, TransactionTable.Code.DPM_GET_PERMISSION_GRANT_STATE,
+                codes, sources);
+        assertCode(11, TransactionTable.Source.REFLECTION, TransactionTable.Code.INSTALLER_CREATE_SESSION,
+                codes, sources);
+        assertCode(14, TransactionTable.Source.REFLECTION, TransactionTable.Code.INSTALLER_ABANDON_SESSION,
+                codes, sources);
+        assertCode(15, TransactionTable.Source.REFLECTION, TransactionTable.Code.INSTALLER_OPEN_SESSION,
+                codes, sources);
+        assertCode(28, TransactionTable.Source.REFLECTION, TransactionTable.Code.SESSION_COMMIT, codes, sources);
+    }
+
+    @Test
+    public void missingFieldFallsBackPerSdk() {
+        // IPackageInstallerSession$Stub loads but has no TRANSACTION_openWrite
+        int[] codes = new int[CODES];
+        TransactionTable.Source[] sources = new TransactionTable.Source[CODES];
+
+        TransactionTable.resolve(TransactionTableTest.class.getClassLoader(), 27, codes, sources);
+        assertCode(4, TransactionTable.Source.FALLBACK, TransactionTable.Code.SESSION_OPEN_WRITE, codes, sources);
+        assertCode(28, TransactionTable.Source.REFLECTION, TransactionTable.Code.SESSION_COMMIT, codes, sources);
+
+        TransactionTable.resolve(TransactionTableTest.class.getClassLoader(), 34, codes, sources);
+        assertCode(TransactionTable.MISSING, TransactionTable.Source.MISSING, TransactionTable.Code.SESSION_OPEN_WRITE,
+                codes, sources);
+    }
+
+    @Test
+    public void unloadableStubsUseTheFallbackTable() {
+        int[] codes = new int[CODES];
+        TransactionTable.Source[] sources = new TransactionTable.Source[CODES];
+        TransactionTable.resolve(NO_STUBS, 27, codes, sources);
+
+        int[] fallback = TransactionTable.fallbackCodes(27);
+        for (TransactionTable.Code code : TransactionTable.Code.values()) {
+            assertCode(fallback[code.ordinal()], TransactionTable.Source.FALLBACK, code, codes, sources);
+        }
+        assertEquals(132, codes[TransactionTable.Code.DPM_SET_APPLICATION_HIDDEN.ordinal()]);
+        assertEquals(8, codes[TransactionTable.Code.SESSION_COMMIT.ordinal()]);
+    }
+
+    @Test
+    public void unloadableStubsOnUnknownSdkAreMissing() {
+        int[] codes = new int[CODES];
+        TransactionTable.Source[] sources = new TransactionTable.Source[CODES];
+        for (int sdk : new int[] {25, 28, 33}) {
+            TransactionTable.resolve(NO_STUBS, sdk, codes, sources);
+            for (TransactionTable.Code code : TransactionTable.Code.values()) {
+                assertCode(TransactionTable.MISSING, TransactionTable.Source.MISSING, code, codes, sources);
+            }
+        }
+    }
+
+    @Test
+    public void fallbackOnlyCoversAndroid8() {
+        int[] sdk26 = TransactionTable.fallbackCodes(26);
+        assertEquals(TransactionTable.MISSING, sdk26[TransactionTable.Code.DPM_SET_APPLICATION_HIDDEN.ordinal()]);
+        assertEquals(1, sdk26[TransactionTable.Code.INSTALLER_CREATE_SESSION.ordinal()]);
+    }
+
+    @Test
+    public void requireThrowsForMissingCode() {
+        // The process-wide table, resolved for the stand-in SDK_INT 34
+        assertEquals(TransactionTable.Source.MISSING, TransactionTable.getSource(TransactionTable.Code.SESSION_OPEN_WRITE));
+        assertEquals(TransactionTable.MISSING, TransactionTable.get(TransactionTable.Code.SESSION_OPEN_WRITE));
+        try {
+            TransactionTable.require(TransactionTable.Code.SESSION_OPEN_WRITE);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("openWrite on API 34"));
+        }
+        assertEquals(28, TransactionTable.require(TransactionTable.Code.SESSION_COMMIT));
+        assertTrue(TransactionTable.describe().contains("openWrite = -1 (MISSING)"));
+    }
+
+    private static void assertCode(int expected, TransactionTable.Source source, TransactionTable.Code code,
+                                   int[] codes, TransactionTable.Source[] sources) {
+        assertEquals(code + " source", source, sources[code.ordinal()]);
+        assertEquals(code + " code", expected, codes[code.ordinal()]);
+    }
+}
@@ -0,0 +1,514 @@
+package com.example.deviceownerapp;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ZipArchive against java.util.zip.ZipFile on archives written by
+ * ZipOutputStream, and on hand-built ZIP64 records for the cases
+ * ZipOutputStream only produces past 4 GB.
+ */
+public class ZipArchiveTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final List<RandomAccessFile> opened = new ArrayList<>();
+
+    @After
+    public void closeFiles() throws IOException {
+        for (RandomAccessFile file : opened) {
+            file.close();
+        }
+    }
+
+    // ======== Central directory and lookup ========
+
+    @Test
+    public void thousandsOfEntriesMatchZipFile() throws IOException {
+        File file = temp.newFile();
+        Fixtures.writeSynthetic(file, 5000);
+        ZipArchive zip = open(file);
+
+        try (ZipFile reference = new ZipFile(file)) {
+            assertEquals(reference.size(), zip.getEntries().size());
+            int i = 0;
+            for (Enumeration<? extends ZipEntry> e = reference.entries(); e.hasMoreElements(); i++) {
+                ZipEntry expected = e.nextElement();
+                ZipArchive.Entry entry = zip.getEntries().get(i);
+                assertEquals(expected.getName(), entry.name);
+                assertEquals(expected.getMethod(), entry.method);
+                assertEquals(expected.getCrc(), entry.crc);
+                assertEquals(expected.getSize(), entry.size);
+                assertEquals(expected.getCompressedSize(), entry.compressedSize);
+                assertSame(entry, zip.getEntry(expected.getName()));
+                if (i % 250 == 0) {
+                    try (InputStream in = zip.getInputStream(entry);
+                         InputStream refIn = reference.getInputStream(expected)) {
+                        assertArrayEquals(expected.getName(), readAll(refIn), readAll(in));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lookupMissesReturnNull() throws IOException {
+        File file = temp.newFile();
+        Fixtures.writeSynthetic(file, 2000);
+        ZipArchive zip = open(file);
+        assertNull(zip.getEntry("dir7/entry-2000.bin"));
+        assertNull(zip.getEntry("dir7/entry-7.bi"));
+        assertNull(zip.getEntry(""));
+        assertNotNull(zip.getEntry("dir7/entry-7.bin"));
+    }
+
+    @Test
+    public void nonAsciiNamesAreComparedAsUtf8() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("res/été.txt", "summer".getBytes(StandardCharsets.UTF_8));
+        entries.put("res/冬.txt", "winter".getBytes(StandardCharsets.UTF_8));
+        ZipArchive zip = open(Fixtures.zip(temp.newFile(), entries, false));
+        assertEquals("winter", new String(readAll(zip.getInputStream(zip.getEntry("res/冬.txt"))),
+                StandardCharsets.UTF_8));
+        assertEquals("été.txt", zip.getEntry("res/été.txt").getFileName());
+    }
+
+    @Test
+    public void firstDuplicateWins() throws IOException {
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.add("a.txt", "first".getBytes(StandardCharsets.UTF_8));
+        builder.add("a.txt", "second".getBytes(StandardCharsets.UTF_8));
+        ZipArchive zip = open(builder.write(temp.newFile()));
+        assertEquals(2, zip.getEntries().size());
+        assertEquals("first", new String(readAll(zip.getInputStream(zip.getEntry("a.txt"))), StandardCharsets.UTF_8));
+    }
+
+    // ======== End of central directory ========
+
+    @Test
+    public void eocdIsFoundBeforeAComment() throws IOException {
+        File file = temp.newFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            out.putNextEntry(new ZipEntry("a.txt"));
+            out.write(1);
+            out.closeEntry();
+            char[] comment = new char[60000];
+            Arrays.fill(comment, 'c');
+            out.setComment(new String(comment));
+        }
+        assertNotNull(open(file).getEntry("a.txt"));
+    }
+
+    @Test
+    public void zip64LocatorForMoreThan65535Entries() throws IOException {
+        // ZipOutputStream switches to ZIP64 end records past 65535 entries;
+        // the classic EOCD then holds 0xFFFF as its count
+        File file = temp.newFile();
+        Fixtures.writeSynthetic(file, 70000);
+        ByteBuffer tail = tail(file, 22);
+        assertEquals(0xFFFF, tail.getShort(10) & 0xFFFF);
+
+        ZipArchive zip = open(file);
+        assertEquals(70000, zip.getEntries().size());
+        assertNotNull(zip.getEntry("dir7/entry-69999.bin"));
+        assertEquals("dir0/entry-0.bin", zip.getEntries().get(0).name);
+    }
+
+    @Test
+    public void zip64EndRecordsAndExtraFields() throws IOException {
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.zip64Eocd = true;
+        builder.zip64Sizes = true;
+        builder.zip64Offsets = true;
+        builder.add("first.bin", Fixtures.bytes(1000, 1));
+        builder.add("second.bin", Fixtures.bytes(3000, 2));
+        File file = builder.write(temp.newFile());
+
+        ZipArchive zip = open(file);
+        assertEquals(2, zip.getEntries().size());
+        ZipArchive.Entry second = zip.getEntry("second.bin");
+        assertEquals(3000, second.size);
+        assertEquals(3000, second.compressedSize);
+        assertArrayEquals(Fixtures.bytes(3000, 2), readAll(zip.getInputStream(second)));
+        assertEquals(builder.cdOffset, zip.getCentralDirectoryOffset());
+    }
+
+    @Test
+    public void zip64ExtraFieldHoldsOnlyOverflowedValues() throws IOException {
+        // Only the local header offset overflowed: the extra field has just that one value
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.zip64Offsets = true;
+        builder.add("a.bin", Fixtures.bytes(10, 3));
+        builder.add("b.bin", Fixtures.bytes(20, 4));
+        ZipArchive zip = open(builder.write(temp.newFile()));
+        assertArrayEquals(Fixtures.bytes(20, 4), readAll(zip.getInputStream(zip.getEntry("b.bin"))));
+    }
+
+    @Test
+    public void shortZip64ExtraFieldIsRejected() throws IOException {
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.zip64Sizes = true;
+        builder.zip64Offsets = true;
+        builder.truncateExtra = 8; // Room for one value, three are needed
+        builder.add("a.bin", Fixtures.bytes(10, 3));
+        assertRejected(builder.write(temp.newFile()), "Short ZIP64 extra field");
+    }
+
+    @Test
+    public void missingZip64ExtraFieldIsRejected() throws IOException {
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.zip64Sizes = true;
+        builder.omitExtra = true;
+        builder.add("a.bin", Fixtures.bytes(10, 3));
+        assertRejected(builder.write(temp.newFile()), "Missing ZIP64 extra field");
+    }
+
+    @Test
+    public void zip64LocatorOutOfRangeIsRejected() throws IOException {
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.zip64Eocd = true;
+        builder.add("a.bin", Fixtures.bytes(10, 3));
+        File file = builder.write(temp.newFile());
+        // Point the locator past itself
+        patchLong(file, file.length() - 22 - 20 + 8, file.length());
+        assertRejected(file, "ZIP64 end of central directory out of range");
+    }
+
+    @Test
+    public void badZip64EocdSignatureIsRejected() throws IOException {
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.zip64Eocd = true;
+        builder.add("a.bin", Fixtures.bytes(10, 3));
+        File file = builder.write(temp.newFile());
+        patchLong(file, builder.cdOffset + builder.cdSize, 0);
+        assertRejected(file, "Bad ZIP64 end of central directory");
+    }
+
+    @Test
+    public void notAZip() throws IOException {
+        File small = temp.newFile();
+        Files.write(small.toPath(), new byte[10]);
+        assertRejected(small, "too small");
+        File noEocd = temp.newFile();
+        Files.write(noEocd.toPath(), new byte[4096]);
+        assertRejected(noEocd, "no end of central directory");
+    }
+
+    @Test
+    public void centralDirectoryOutOfRangeIsRejected() throws IOException {
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.add("a.bin", Fixtures.bytes(10, 3));
+        File file = builder.write(temp.newFile());
+        patchInt(file, file.length() - 22 + 16, (int) file.length()); // EOCD cdOffset
+        assertRejected(file, "Central directory out of range");
+    }
+
+    // ======== Nested archives and streams ========
+
+    @Test
+    public void storedInnerArchiveIsReadInPlace() throws IOException {
+        Map<String, byte[]> inner = new LinkedHashMap<>();
+        inner.put("AndroidManifest.xml", Fixtures.bytes(500, 5));
+        inner.put("classes.dex", Fixtures.bytes(70000, 6));
+        ByteArrayOutputStream apk = new ByteArrayOutputStream();
+        Fixtures.writeZip(apk, inner, false);
+        Map<String, byte[]> outer = new LinkedHashMap<>();
+        outer.put("padding.bin", Fixtures.bytes(12345, 7));
+        outer.put("base.apk", apk.toByteArray());
+        ZipArchive zip = open(Fixtures.zip(temp.newFile(), outer, true));
+
+        ZipArchive.Entry base = zip.getEntry("base.apk");
+        long dataOffset = zip.getDataOffset(base);
+        ZipArchive nested = ZipArchive.open(zip.getChannel(), dataOffset, base.size);
+        assertTrue(nested.getCentralDirectoryOffset() > dataOffset);
+        assertArrayEquals(Fixtures.bytes(70000, 6), readAll(nested.getInputStream(nested.getEntry("classes.dex"))));
+    }
+
+    @Test
+    public void rangeInputStreamStaysInItsRange() throws IOException {
+        File file = temp.newFile();
+        Files.write(file.toPath(), Fixtures.bytes(1000, 8));
+        FileChannel channel = channel(file);
+        byte[] expected = Arrays.copyOfRange(Fixtures.bytes(1000, 8), 100, 400);
+
+        InputStream in = new ZipArchive.RangeInputStream(channel, 100, 300);
+        assertEquals(300, in.available());
+        assertEquals(expected[0] & 0xFF, in.read());
+        assertEquals(10, in.skip(10));
+        byte[] rest = readAll(in);
+        assertArrayEquals(Arrays.copyOfRange(expected, 11, 300), rest);
+        assertEquals(-1, in.read());
+        assertEquals(0, in.skip(5));
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void rangeInputStreamPastEndOfFile() throws IOException {
+        File file = temp.newFile();
+        Files.write(file.toPath(), Fixtures.bytes(100, 9));
+        InputStream in = new ZipArchive.RangeInputStream(channel(file), 50, 100);
+        try {
+            readAll(in);
+            fail("Expected EOFException");
+        } catch (EOFException expected) {
+            // The range claims 50 bytes more than the file has
+        }
+    }
+
+    @Test
+    public void deflatedEntryOfAllSizes() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        int[] sizes = {0, 1, 65535, 65536, 65537, 1 << 20};
+        for (int size : sizes) {
+            entries.put("e" + size, Fixtures.bytes(size, size));
+        }
+        ZipArchive zip = open(Fixtures.zip(temp.newFile(), entries, false));
+        for (int size : sizes) {
+            assertArrayEquals("size " + size, Fixtures.bytes(size, size), readAll(zip.getInputStream(zip.getEntry("e" + size))));
+        }
+    }
+
+    @Test
+    public void truncatedDeflatedEntryFails() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("big.bin", Fixtures.bytes(200000, 10));
+        File file = Fixtures.zip(temp.newFile(), entries, false);
+        ZipArchive zip = open(file);
+        ZipArchive.Entry entry = zip.getEntry("big.bin");
+        // Same entry with half its compressed bytes: the inflater runs dry
+        ZipArchive.Entry cut = new ZipArchive.Entry(entry.name, entry.method, entry.crc,
+                entry.compressedSize / 2, entry.size, entry.localHeaderOffset);
+        try (InputStream in = zip.getInputStream(cut)) {
+            readAll(in);
+            fail("Expected EOFException");
+        } catch (EOFException expected) {
+            assertTrue(expected.getMessage().contains("Unexpected end of ZIP entry"));
+        }
+    }
+
+    @Test
+    public void inflaterStreamClosesOnce() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.bin", Fixtures.bytes(1000, 11));
+        ZipArchive zip = open(Fixtures.zip(temp.newFile(), entries, false));
+        InputStream in = zip.getInputStream(zip.getEntry("a.bin"));
+        in.close();
+        in.close();
+        try {
+            in.read();
+            fail("Expected IOException after close");
+        } catch (IOException expected) {
+            // Stream closed
+        }
+    }
+
+    @Test
+    public void unsupportedMethodIsRejected() throws IOException {
+        HandBuiltZip builder = new HandBuiltZip();
+        builder.method = 12; // bzip2
+        builder.add("a.bz2", Fixtures.bytes(10, 12));
+        ZipArchive zip = open(builder.write(temp.newFile()));
+        try {
+            zip.getInputStream(zip.getEntry("a.bz2"));
+            fail("Expected ZipException");
+        } catch (ZipException expected) {
+            assertTrue(expected.getMessage().contains("Unsupported compression method 12"));
+        }
+    }
+
+    // ======== Helpers ========
+
+    private ZipArchive open(File file) throws IOException {
+        return ZipArchive.open(channel(file));
+    }
+
+    private FileChannel channel(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        opened.add(raf);
+        return raf.getChannel();
+    }
+
+    private void assertRejected(File file, String message) throws IOException {
+        try {
+            open(file);
+            fail("Expected ZipException containing: " + message);
+        } catch (ZipException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(message));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer tail(File file, int length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[length];
+            raf.seek(raf.length() - length);
+            raf.readFully(data);
+            return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static void patchInt(File file, long position, int value) throws IOException {
+        patch(file, position, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+    }
+
+    private static void patchLong(File file, long position, long value) throws IOException {
+        patch(file, position, ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array());
+    }
+
+    private static void patch(File file, long position, byte[] data) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            raf.write(data);
+        }
+    }
+
+    /**
+     * Writes STORED entries with full control over the ZIP64 records, so
+     * small archives can carry the layouts real ones only need past 4 GB.
+     */
+    private static class HandBuiltZip {
+        /** Classic EOCD holds 0xFFFF/0xFFFFFFFF; values come from a ZIP64 EOCD via the locator. */
+        boolean zip64Eocd;
+        /** Central headers hold 0xFFFFFFFF sizes; the real ones are in the ZIP64 extra field. */
+        boolean zip64Sizes;
+        /** Central headers hold a 0xFFFFFFFF local header offset, likewise. */
+        boolean zip64Offsets;
+        boolean omitExtra;
+        int truncateExtra = -1;
+        int method = ZipArchive.METHOD_STORED;
+
+        long cdOffset;
+        long cdSize;
+
+        private final List<byte[]> data = new ArrayList<>();
+        private final List<String> order = new ArrayList<>();
+
+        void add(String name, byte[] bytes) {
+            order.add(name);
+            data.add(bytes);
+        }
+
+        File write(File file) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long[] offsets = new long[order.size()];
+            long[] crcs = new long[order.size()];
+            for (int i = 0; i < order.size(); i++) {
+                byte[] name = order.get(i).getBytes(StandardCharsets.UTF_8);
+                byte[] bytes = data.get(i);
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                crcs[i] = crc.getValue();
+                offsets[i] = out.size();
+                ByteBuffer local = le(30 + name.length);
+                local.putInt(0x04034b50).putShort((short) 45).putShort((short) 0x0800).putShort((short) method)
+                        .putInt(0).putInt((int) crcs[i]).putInt(bytes.length).putInt(bytes.length)
+                        .putShort((short) name.length).putShort((short) 0).put(name);
+                out.write(local.array());
+                out.write(bytes);
+            }
+
+            cdOffset = out.size();
+            for (int i = 0; i < order.size(); i++) {
+                byte[] name = order.get(i).getBytes(StandardCharsets.UTF_8);
+                long size = data.get(i).length;
+                ByteBuffer extra = le(28);
+                extra.putShort((short) 1).putShort((short) 0);
+                if (zip64Sizes) {
+                    extra.putLong(size).putLong(size);
+                }
+                if (zip64Offsets) {
+                    extra.putLong(offsets[i]);
+                }
+                int extraLength = extra.position();
+                extra.putShort(2, (short) (extraLength - 4));
+                if (truncateExtra >= 0) {
+                    extraLength = 4 + truncateExtra;
+                    extra.putShort(2, (short) truncateExtra);
+                }
+                if (omitExtra || (!zip64Sizes && !zip64Offsets)) {
+                    extraLength = 0;
+                }
+
+                ByteBuffer central = le(46 + name.length + extraLength);
+                central.putInt(0x02014b50).putShort((short) 45).putShort((short) 45).putShort((short) 0x0800)
+                        .putShort((short) method).putInt(0).putInt((int) crcs[i])
+                        .putInt(zip64Sizes ? -1 : (int) size).putInt(zip64Sizes ? -1 : (int) size)
+                        .putShort((short) name.length).putShort((short) extraLength).putShort((short) 0)
+                        .putShort((short) 0).putShort((short) 0).putInt(0)
+                        .putInt(zip64Offsets ? -1 : (int) offsets[i]).put(name);
+                central.put(extra.array(), 0, extraLength);
+                out.write(central.array());
+            }
+            cdSize = out.size() - cdOffset;
+
+            if (zip64Eocd) {
+                long eocd64 = out.size();
+                ByteBuffer record = le(56);
+                record.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                        .putLong(order.size()).putLong(order.size()).putLong(cdSize).putLong(cdOffset);
+                out.write(record.array());
+                ByteBuffer locator = le(20);
+                locator.putInt(0x07064b50).putInt(0).putLong(eocd64).putInt(1);
+                out.write(locator.array());
+            }
+            ByteBuffer eocd = le(22);
+            eocd.putInt(0x06054b50).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) (zip64Eocd ? 0xFFFF : order.size()))
+                    .putShort((short) (zip64Eocd ? 0xFFFF : order.size()))
+                    .putInt(zip64Eocd ? -1 : (int) cdSize).putInt(zip64Eocd ? -1 : (int) cdOffset)
+                    .putShort((short) 0);
+            out.write(eocd.array());
+
+            Files.write(file.toPath(), out.toByteArray());
+            return file;
+        }
+
+        private static ByteBuffer le(int size) {
+            return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+}